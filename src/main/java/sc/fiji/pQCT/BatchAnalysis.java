@@ -0,0 +1,320 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ij.IJ;
+import sc.fiji.pQCT.analysis.ScanAnalysis;
+import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
+import sc.fiji.pQCT.io.ScaledImageData;
+import sc.fiji.pQCT.io.TypCalibration;
+import sc.fiji.pQCT.selectroi.BitMask;
+import sc.fiji.pQCT.utils.ResultsWriter;
+
+/**
+ * Headless batch analysis of Stratec files. Runs the same analyses as
+ * {@link PqctAnalysis} on a fixed size worker pool without any dialogs,
+ * windows or result tables, and writes one tab separated results row per scan
+ * in the order the files were given.
+ * <p>
+ * The parameters are read from a properties file whose keys are the labels of
+ * the {@link PqctAnalysis} dialog (e.g. {@code Area_threshold=550}). If
+ * {@code Scaling_coefficient} is not given, the scaling of each scan is read
+ * from the TYP file of its device, from the bundled TYP files or from the
+ * directory given by {@code TYP_directory}.
+ * </p>
+ * Usage:
+ * {@code java sc.fiji.pQCT.BatchAnalysis parameters.txt results.txt <directory|files>...}
+ */
+public class BatchAnalysis {
+
+	private static final String[] THRESHOLD_LABELS = { "Peeling_percentage",
+		"Air_threshold", "Fat_threshold", "Muscle_threshold", "Edge_divisions",
+		"Marrow_threshold", "Soft_tissue_threshold", "Rotation_threshold",
+		"Area_threshold", "bMD_threshold", "Scaling_coefficient",
+		"Scaling_constant" };
+	private static final double[] THRESHOLD_DEFAULTS = { 20, -40, 40, 40, 45, 80,
+		200, 200, 550, 690, 1, 0 };
+	private static final String[] CHOICE_KEYS = { "Roi_selection",
+		"Soft_Tissue_Roi_selection", "Rotation_selection" };
+
+	private final ImageAndAnalysisDetails details;
+	private final boolean typCalibration;
+	private final TypCalibration typFiles;
+	private final int threads;
+
+	/**
+	 * @param details parameters of the analysis, copied for each scan.
+	 * @param typCalibration read the scaling of each scan from its TYP file
+	 *          instead of using the scaling in details.
+	 * @param threads number of scans analysed concurrently.
+	 */
+	public BatchAnalysis(final ImageAndAnalysisDetails details,
+		final boolean typCalibration, final int threads)
+	{
+		this(details, typCalibration, TypCalibration.getDefault(), threads);
+	}
+
+	/**
+	 * @param typFiles the TYP files used when typCalibration is true.
+	 */
+	public BatchAnalysis(final ImageAndAnalysisDetails details,
+		final boolean typCalibration, final TypCalibration typFiles,
+		final int threads)
+	{
+		if (!(details.cOn || details.mOn || details.conOn || details.dOn ||
+			details.stOn))
+		{
+			throw new IllegalArgumentException("No analysis was selected.");
+		}
+		this.details = details;
+		this.typCalibration = typCalibration;
+		this.typFiles = typFiles;
+		this.threads = Math.max(1, threads);
+	}
+
+	public static BatchAnalysis fromParameters(final Properties parameters,
+		final int threads)
+	{
+		final boolean[] topValues = getBooleans(parameters,
+			PqctAnalysis.TOP_LABELS);
+		final double[] thresholdsAndScaling = new double[THRESHOLD_LABELS.length];
+		for (int i = 0; i < thresholdsAndScaling.length; ++i) {
+			thresholdsAndScaling[i] = Double.valueOf(parameters.getProperty(
+				THRESHOLD_LABELS[i], Double.toString(THRESHOLD_DEFAULTS[i])).trim());
+		}
+		final String[] alignmentStrings = new String[CHOICE_KEYS.length];
+		for (int i = 0; i < alignmentStrings.length; ++i) {
+			final String[] labels = i < 2 ? PqctAnalysis.CHOICE_LABELS
+				: PqctAnalysis.ROTATION_LABELS;
+			alignmentStrings[i] = parameters.getProperty(CHOICE_KEYS[i], labels[0])
+				.trim();
+			if (!Arrays.asList(labels).contains(alignmentStrings[i])) {
+				throw new IllegalArgumentException("Unknown " + CHOICE_KEYS[i] + ": " +
+					alignmentStrings[i]);
+			}
+		}
+		final boolean[] middleValues = getBooleans(parameters,
+			PqctAnalysis.MIDDLE_LABELS);
+		if (parameters.getProperty(PqctAnalysis.MIDDLE_LABELS[3]) == null) {
+			// Density distribution is selected by default in the dialog
+			middleValues[3] = true;
+		}
+		final double manualAlpha = Double.valueOf(parameters.getProperty(
+			"Manual_rotation", "0").trim()) * Math.PI / 180.0;
+		final boolean[] bottomValues = getBooleans(parameters,
+			PqctAnalysis.BOTTOM_LABELS);
+		final ImageAndAnalysisDetails details = new ImageAndAnalysisDetails(
+			topValues, thresholdsAndScaling, alignmentStrings,
+			PqctAnalysis.CHOICE_LABELS, PqctAnalysis.ROTATION_LABELS, middleValues,
+			manualAlpha, bottomValues, PqctAnalysis.SECTORS_AND_DIVISIONS.clone());
+		final boolean typCalibration = parameters.getProperty(
+			"Scaling_coefficient") == null;
+		final String typDirectory = parameters.getProperty("TYP_directory");
+		final TypCalibration typFiles = typDirectory == null ? TypCalibration
+			.getDefault() : new TypCalibration(new File(typDirectory.trim()));
+		return new BatchAnalysis(details, typCalibration, typFiles, threads);
+	}
+
+	private static boolean[] getBooleans(final Properties parameters,
+		final String[] labels)
+	{
+		final boolean[] values = new boolean[labels.length];
+		for (int i = 0; i < labels.length; ++i) {
+			values[i] = Boolean.parseBoolean(parameters.getProperty(labels[i],
+				"false").trim());
+		}
+		return values;
+	}
+
+	/**
+	 * @return the Stratec files (I*.M*) in the directory in alphabetical order.
+	 */
+	public static List<File> listStratecFiles(final File directory) {
+		final File[] files = directory.listFiles((dir, name) -> name.matches(
+			"(?i)I.*\\.M.*"));
+		if (files == null) {
+			return Collections.emptyList();
+		}
+		final List<File> list = new ArrayList<>(Arrays.asList(files));
+		Collections.sort(list);
+		return list;
+	}
+
+	public String getHeader() {
+		final boolean alphaOn = details.cOn || details.mOn || details.conOn ||
+			details.dOn;
+		return new ResultsWriter("", alphaOn).getHeader(details);
+	}
+
+	/**
+	 * Analyses the files and writes the header and one results row per file to
+	 * the writer. A file that cannot be analysed gets a row with the error
+	 * instead of results. At most a few rows per thread are kept in memory.
+	 */
+	public void run(final List<File> files, final Writer writer)
+		throws IOException, InterruptedException
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			writer.write(getHeader());
+			writer.write("\n");
+			final Deque<Future<String>> pending = new ArrayDeque<>();
+			for (final File file : files) {
+				pending.add(executor.submit(() -> analyseRow(file)));
+				if (pending.size() >= 2 * threads) {
+					writeRow(pending.poll(), writer);
+				}
+			}
+			while (!pending.isEmpty()) {
+				writeRow(pending.poll(), writer);
+			}
+			writer.flush();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void writeRow(final Future<String> row, final Writer writer)
+		throws IOException, InterruptedException
+	{
+		try {
+			writer.write(row.get());
+			writer.write("\n");
+		}
+		catch (final ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private String analyseRow(final File file) {
+		try {
+			return analyse(file);
+		}
+		catch (final Exception e) {
+			IJ.log("Analysing " + file.getPath() + " failed: " + e.toString());
+			return file.getPath() + "\t" + e.toString();
+		}
+	}
+
+	/**
+	 * Reads and analyses a single Stratec file.
+	 *
+	 * @return the results row of the file, without line end.
+	 */
+	public String analyse(final File file) throws IOException,
+		ExecutionException
+	{
+		final ReadStratecFile imp = new ReadStratecFile();
+		imp.read(file);
+		final String imageInfo = (String) imp.getProperty("Info");
+		final ImageAndAnalysisDetails scanDetails;
+		if (typCalibration) {
+			final String device = PqctAnalysis.getInfoProperty(imageInfo, "Device");
+			final double[] calibrationCoefficients = typFiles.getScaling(device);
+			if (calibrationCoefficients == null) {
+				throw new IOException("No TYP file for device " + device);
+			}
+			scanDetails = new ImageAndAnalysisDetails(details,
+				calibrationCoefficients[1], calibrationCoefficients[0]);
+		}
+		else {
+			scanDetails = new ImageAndAnalysisDetails(details, details.scalingFactor,
+				details.constant);
+		}
+		final double resolution = PqctAnalysis.getResolution(imageInfo, imp
+			.getCalibration().pixelWidth);
+		final ScaledImageData scaledImageData = new ScaledImageData(PqctAnalysis
+			.getSignedShort(imp), imp.getWidth(), imp.getHeight(), resolution,
+			scanDetails.scalingFactor, scanDetails.constant,
+			scanDetails.flipHorizontal, scanDetails.flipVertical,
+			scanDetails.noFiltering);
+		final ScanAnalysis analysis = new ScanAnalysis(scaledImageData,
+			scanDetails, (BitMask) null);
+		final ResultsWriter resultsWriter = new ResultsWriter(imageInfo,
+			analysis.determineAlpha != null);
+		return PqctAnalysis.getResults(resultsWriter.printResults("",
+			analysis.details, imp), analysis, analysis.details);
+	}
+
+	public static void main(final String[] args) throws IOException,
+		InterruptedException
+	{
+		if (args.length < 3) {
+			System.err.println("Usage: BatchAnalysis <parameter file> " +
+				"<results file> <directory or Stratec file>...");
+			System.exit(1);
+		}
+		if (System.getProperty("java.awt.headless") == null) {
+			System.setProperty("java.awt.headless", "true");
+		}
+		final Properties parameters = new Properties();
+		try (final InputStream in = Files.newInputStream(new File(args[0])
+			.toPath()))
+		{
+			parameters.load(in);
+		}
+		final int threads = Integer.parseInt(parameters.getProperty("Threads",
+			Integer.toString(Runtime.getRuntime().availableProcessors())).trim());
+		final BatchAnalysis batchAnalysis = fromParameters(parameters, threads);
+		final List<File> files = new ArrayList<>();
+		for (int i = 2; i < args.length; ++i) {
+			final File file = new File(args[i]);
+			if (file.isDirectory()) {
+				files.addAll(listStratecFiles(file));
+			}
+			else {
+				files.add(file);
+			}
+		}
+		try (final Writer writer = Files.newBufferedWriter(new File(args[1])
+			.toPath(), StandardCharsets.UTF_8))
+		{
+			batchAnalysis.run(files, writer);
+		}
+	}
+}
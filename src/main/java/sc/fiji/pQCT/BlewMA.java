@@ -29,8 +29,6 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package sc.fiji.pQCT;
 
 import java.awt.Color;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
@@ -63,11 +61,12 @@ import sc.fiji.pQCT.selectroi.SelectROI;
 import sc.fiji.pQCT.selectroi.SelectSoftROI;
 import sc.fiji.pQCT.selectroi.SelectSoftROILasso;
 import sc.fiji.pQCT.utils.ResultsWriter;
+import sc.fiji.pQCT.selectroi.Contour;
 import sc.fiji.pQCT.selectroi.DetectedEdge;
+import sc.fiji.pQCT.selectroi.ScanlineFill;
 
 import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 
 public class BlewMA implements PlugIn {
@@ -103,53 +102,9 @@ public class BlewMA implements PlugIn {
 			}
 		}
 		else {
-			calibrationCoefficients = new double[2];
 			// Read calibration from TYP file database
-			final String typFileName = getInfoProperty(imageInfo, "Device");
-			try {
-				final ClassLoader loader = getClass().getClassLoader();
-				final InputStream ir = loader.getResourceAsStream("typ/" + typFileName);
-				final byte[] typFileData = new byte[ir.available()];
-				ir.read(typFileData);
-				ir.close();
-				final String typFiledDataString = new String(typFileData, "ISO-8859-1");
-				// break the typFileDataString into lines
-				final StringTokenizer st = new StringTokenizer(typFiledDataString,
-					"\n");
-				final List<String> typFileLines = new Vector<>();
-				while (st.hasMoreTokens()) {
-					typFileLines.add(st.nextToken());
-				}
-				// Search for XSlope and XInter
-				final String[] searchFor = { "XInter", "XSlope" };
-				for (int i = 0; i < searchFor.length; ++i) {
-					int index = 0;
-					String temp = typFileLines.get(index);
-					while (!temp.contains(searchFor[i]) && index < typFileLines.size()) {
-						++index;
-						temp = typFileLines.get(index);
-					}
-					if (temp.contains(searchFor[i])) { // Found line
-						final StringTokenizer st2 = new StringTokenizer(temp, "=");
-						final List<String> typFileLineTokens = new Vector<>();
-						while (st2.hasMoreTokens()) {
-							typFileLineTokens.add(st2.nextToken().trim());
-						}
-						calibrationCoefficients[i] = Double.valueOf(typFileLineTokens.get(
-							1));
-					}
-					else {
-						calibrationCoefficients[i] = i * 1000.0;
-					}
-				}
-				calibrationCoefficients[1] /= 1000.0; // 1.495
-			}
-			catch (final NullPointerException npe) {
-				IJ.log(".TYP file not found");
-			}
-			catch (final IOException e) {
-				IJ.error(".TYP file could not be read");
-			}
+			calibrationCoefficients = PqctAnalysis.readTypCalibration(
+				getInfoProperty(imageInfo, "Device"));
 		}
 		double resolution = cal.pixelWidth;
 		if (getInfoProperty(imageInfo, "Pixel Spacing") != null) {
@@ -274,11 +229,11 @@ public class BlewMA implements PlugIn {
 		int lowPixels  = 0;
 		for (int b = lowedges.size()-2; b<lowedges.size();++b){
 			byte[] temp = new byte[scaledImageData.width*scaledImageData.height];
-			for (int i = 0;i<lowedges.get(b).iit.size();++i){
-				temp[lowedges.get(b).iit.get(i)+lowedges.get(b).jiit.get(i)*scaledImageData.width] = 1;
+			final Contour contour = lowedges.get(b).contour;
+			for (int i = 0;i<contour.size();++i){
+				temp[contour.getI(i)+contour.getJ(i)*scaledImageData.width] = 1;
 			}
-			Vector<Object> filled = fillResultEdge(temp, scaledImageData.width, scaledImageData.height,	lowedges.get(b).iit,lowedges.get(b).jiit,blewFiltered, thresholdsAndScaling[0]);
-			temp = (byte[]) filled.get(0);
+			fillResultEdge(temp, scaledImageData.width, scaledImageData.height,	contour,blewFiltered, thresholdsAndScaling[0]);
 			for (int t = 0; t<temp.length;++t){
 				if (temp[t] > 0 && blewFiltered[t] > 70){
 					lowMask[t] = 1;
@@ -292,11 +247,11 @@ public class BlewMA implements PlugIn {
 		int highPixels = 0;
 		for (int b = highedges.size()-2; b<lowedges.size();++b){
 			byte[] temp = new byte[scaledImageData.width*scaledImageData.height];
-			for (int i = 0;i<highedges.get(b).iit.size();++i){
-				temp[highedges.get(b).iit.get(i)+highedges.get(b).jiit.get(i)*scaledImageData.width] = 1;
+			final Contour contour = highedges.get(b).contour;
+			for (int i = 0;i<contour.size();++i){
+				temp[contour.getI(i)+contour.getJ(i)*scaledImageData.width] = 1;
 			}
-			Vector<Object> filled = fillResultEdge(temp, scaledImageData.width, scaledImageData.height,	highedges.get(b).iit,highedges.get(b).jiit,blewFiltered, thresholdsAndScaling[1]);
-			temp = (byte[]) filled.get(0);
+			fillResultEdge(temp, scaledImageData.width, scaledImageData.height,	contour,blewFiltered, thresholdsAndScaling[1]);
 			for (int t = 0; t<temp.length;++t){
 				if (temp[t] > 0 && blewFiltered[t] > 70){
 					highMask[t] = 1;
@@ -739,7 +694,7 @@ public class BlewMA implements PlugIn {
 		int j = 0;
 		int tempI;
 		int tempJ;
-		byte[] result = new byte[scaledImage.length];
+		final byte[] result = new byte[scaledImage.length];
 		final ArrayList<DetectedEdge> edges = new ArrayList<DetectedEdge>();
 		while ((i < (width - 1)) && (j < (height - 1))) {
 			while (j < height - 1 && i < width && scaledImage[i + j *
@@ -771,53 +726,33 @@ public class BlewMA implements PlugIn {
 			result[i + j * width] = 1;
 
 			// Tracing algorithm 
-			Vector<Object> returned = null;
+			Contour contour = null;
 			if (!grTrack){
-				returned = traceEdge(scaledImage, width, height, result, threshold, i, j); //Contour tracing
+				contour = traceEdge(scaledImage, width, height, result, threshold, i, j); //Contour tracing
 			}else{
-				//returned = traceGradient(scaledImage, result, threshold, i, j); //Contour tracing		
+				//contour = traceGradient(scaledImage, result, threshold, i, j); //Contour tracing		
 			}
-			result = (byte[]) returned.get(0);
-			final Vector<Integer> newIit = (Vector<Integer>) returned.get(1);
-			final Vector<Integer> newJiit = (Vector<Integer>) returned.get(2);
 			// Tracing algorithm done...
 
 			if (allowCleaving) {
 				/*
-				final Vector<Vector<Vector<Integer>>> returnedVectors = cleaveEdge(
-					result, newIit, newJiit, 3.0, 6.0);
-				for (final Vector<Vector<Integer>> returnedVector : returnedVectors) {
+				final List<Contour> contours = cleaveEdge(result, contour, 3.0, 6.0);
+				for (final Contour cleaved : contours) {
 					// Fill edge within result..
-					final Vector<Integer> iit = new Vector<>();
-					final Vector<Integer> jiit = new Vector<>();
-					for (int ii = 0; ii < returnedVector.get(0).size(); ++ii) {
-						iit.add(returnedVector.get(0).get(ii));
-						jiit.add(returnedVector.get(1).get(ii));
-					}
-					final Vector<Object> results = fillResultEdge(result,width,height, iit, jiit,
+					final DetectedEdge edge = fillResultEdge(result,width,height, cleaved,
 						scaledImage, threshold);
-					if (results != null) {
-						result = (byte[]) results.get(0);
-						edges.add(new DetectedEdge((Vector<Integer>) results.get(1),
-							(Vector<Integer>) results.get(2), (Integer) results.get(3)));
+					if (edge != null) {
+						edges.add(edge);
 					}
 				}
 				*/
 			}
 			else {
 				// Fill edge within result..
-				final Vector<Integer> iit = new Vector<>();
-				final Vector<Integer> jiit = new Vector<>();
-				for (int ii = 0; ii < newIit.size(); ++ii) {
-					iit.add(newIit.get(ii));
-					jiit.add(newJiit.get(ii));
-				}
-				final Vector<Object> results = fillResultEdge(result,width,height, iit, jiit,
+				final DetectedEdge edge = fillResultEdge(result,width,height, contour,
 					scaledImage, threshold);
-				if (results != null) {
-					result = (byte[]) results.get(0);
-					edges.add(new DetectedEdge((Vector<Integer>) results.get(1),
-						(Vector<Integer>) results.get(2), (Integer) results.get(3)));
+				if (edge != null) {
+					edges.add(edge);
 				}
 			}
 			// Find next empty spot
@@ -842,13 +777,11 @@ public class BlewMA implements PlugIn {
 	Idea taken from http://www.math.ucla.edu/~bertozzi/RTG/zhong07/report_zhong.pdf
 	The paper traced continent edges on map/satellite image
 	*/
-	private Vector<Object> traceEdge(final double[] scaledImage, int width, int height,
+	private Contour traceEdge(final double[] scaledImage, int width, int height,
 		final byte[] result, final double threshold, int i, int j)
 	{
-		final Collection<Integer> iit = new Vector<>();
-		final Collection<Integer> jiit = new Vector<>();
-		iit.add(i);
-		jiit.add(j);
+		final Contour contour = new Contour();
+		contour.add(i, j);
 		// begin by advancing right. Positive angles rotate the direction clockwise.
 		double direction = 0;
 		double previousDirection;
@@ -914,11 +847,7 @@ public class BlewMA implements PlugIn {
 						result[ii] = 1;
 					}
 				}
-				final Vector<Object> returnVector = new Vector<>();
-				returnVector.add(result);
-				returnVector.add(iit);
-				returnVector.add(jiit);
-				return returnVector;
+				return contour;
 			}
 			else {
 				if (result[i + j * width] == 0) {
@@ -927,8 +856,7 @@ public class BlewMA implements PlugIn {
 				else if (result[i + j * width] != 1) {
 					result[i + j * width]++;
 				}
-				iit.add(i);
-				jiit.add(j);
+				contour.add(i, j);
 
 			}
 			// Keep steering counter clockwise not to miss single pixel structs...
@@ -936,53 +864,44 @@ public class BlewMA implements PlugIn {
 		}
 	}
 
-	// DetectedEdge version
-	private Vector<Object> fillResultEdge(byte[] result, int width, int height,
-		final Vector<Integer> iit, final Vector<Integer> jiit,
-		final double[] scaledImage, final double threshold)
+	// DetectedEdge version, null if the fill leaked out of the edge
+	private DetectedEdge fillResultEdge(final byte[] result, int width, int height,
+		final Contour contour, final double[] scaledImage, final double threshold)
 	{
-		if (iit.isEmpty()) {
+		if (contour.isEmpty()) {
 			return null;
 		}
-		Vector<Object> results = null;
 		int pixelsFilled = 0;
 		// Set initial fill pixel to the first pixel above threshold not on the
 		// border
-		boolean possible = true;
-		final byte[] tempResult = result.clone();
-		int[] tempCoordinates = findFillInit(tempResult,width,height, iit, jiit, scaledImage,
+		final ScanlineFill scanlineFill = new ScanlineFill(width, height);
+		int[] tempCoordinates = findFillInit(result,width,height, contour, scaledImage,
 			threshold);
-		while (possible && tempCoordinates != null) {
-			final Vector<Object> returned = resultFill(tempCoordinates[0],
-				tempCoordinates[1], tempResult,width,height);
-			possible = (Boolean) returned.get(0);
-			pixelsFilled += (Integer) returned.get(1);
-			tempCoordinates = findFillInit(tempResult,width,height, iit, jiit, scaledImage,
+		while (tempCoordinates != null) {
+			final int filled = scanlineFill.fill(result, tempCoordinates[0],
+				tempCoordinates[1]);
+			if (filled < 0) {
+				scanlineFill.undo(result);
+				return null;
+			}
+			pixelsFilled += filled;
+			tempCoordinates = findFillInit(result,width,height, contour, scaledImage,
 				threshold);
 		}
-		if (possible) {
-			results = new Vector<>();
-			result = tempResult;
-			results.add(result);
-			results.add(iit);
-			results.add(jiit);
-			results.add(pixelsFilled);
-		}
-		return results;
+		return new DetectedEdge(contour, pixelsFilled);
 	}	
 	
 	// DetectedEdge. Find fill init by steering clockwise from next to previous
-	private int[] findFillInit(final byte[] result, int width, int height, final Vector<Integer> iit,
-		final Vector<Integer> jiit, final double[] scaledImage,
-		final double threshold)
+	private int[] findFillInit(final byte[] result, int width, int height, final Contour contour,
+		final double[] scaledImage, final double threshold)
 	{
 		final int[] returnCoordinates = new int[2];
 		final int[] steer = new int[2];
-		for (int j = 0; j < iit.size() - 1; ++j) {
-			returnCoordinates[0] = iit.get(j);
-			returnCoordinates[1] = jiit.get(j);
-			double direction = Math.atan2(jiit.get(j + 1) - returnCoordinates[1], iit
-				.get(j + 1) - returnCoordinates[0]);
+		for (int j = 0; j < contour.size() - 1; ++j) {
+			returnCoordinates[0] = contour.getI(j);
+			returnCoordinates[1] = contour.getJ(j);
+			double direction = Math.atan2(contour.getJ(j + 1) - returnCoordinates[1], contour
+				.getI(j + 1) - returnCoordinates[0]);
 			for (int i = 0; i < 8; ++i) {
 				direction += Math.PI / 4.0;
 				steer[0] = (int) Math.round(Math.cos(direction));
@@ -1014,51 +933,4 @@ public class BlewMA implements PlugIn {
 		}
 		return null;
 	}
-	
-	private Vector<Object> resultFill(int i, int j, final byte[] tempResult, int width, int height) {
-		final Vector<Integer> initialI = new Vector<>();
-		final Vector<Integer> initialJ = new Vector<>();
-		initialI.add(i);
-		initialJ.add(j);
-		int pixelsFilled = 0;
-		while (!initialI.isEmpty() && initialI.lastElement() > 0 && initialI
-			.lastElement() < width - 1 && initialJ.lastElement() > 0 && initialJ
-				.lastElement() < height - 1)
-		{
-			i = initialI.lastElement();
-			j = initialJ.lastElement();
-			initialI.remove(initialI.size() - 1);
-			initialJ.remove(initialJ.size() - 1);
-
-			if (tempResult[i + j * width] == 0) {
-				tempResult[i + j * width] = 1;
-				++pixelsFilled;
-			}
-
-			if (tempResult[i - 1 + j * width] == 0) {
-				initialI.add(i - 1);
-				initialJ.add(j);
-			}
-
-			if (tempResult[i + 1 + j * width] == 0) {
-				initialI.add(i + 1);
-				initialJ.add(j);
-			}
-
-			if (tempResult[i + (j - 1) * width] == 0) {
-				initialI.add(i);
-				initialJ.add(j - 1);
-			}
-
-			if (tempResult[i + (j + 1) * width] == 0) {
-				initialI.add(i);
-				initialJ.add(j + 1);
-			}
-
-		}
-		final Vector<Object> returnValue = new Vector<>();
-		returnValue.add(initialI.isEmpty() && initialJ.isEmpty());
-		returnValue.add(pixelsFilled);
-		return returnValue;
-	}
 }
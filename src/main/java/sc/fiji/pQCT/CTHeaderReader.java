@@ -28,20 +28,14 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package sc.fiji.pQCT;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 
 import javax.activation.UnsupportedDataTypeException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+
+import sc.fiji.pQCT.io.StratecFile;
 
 class CTHeaderReader {
 
-	private static final int PERCENT_OFFSET = 334;
-	private static final int SITE_LENGTH_OFFSET = 1316;
 	private final File fileIn;
 	double percent;
 	String site;
@@ -50,27 +44,12 @@ class CTHeaderReader {
 		fileIn = new File(fileName);
 	}
 
-	private void readHeader(final DataInputStream input) throws IOException {
-		input.skipBytes(PERCENT_OFFSET);
-		byte[] temp = new byte[8];
-		input.read(temp);
-		ByteBuffer tempbb = ByteBuffer.wrap(temp);
-		tempbb  = tempbb.order(ByteOrder.LITTLE_ENDIAN);
-		percent = tempbb.getDouble();
-		input.skipBytes(SITE_LENGTH_OFFSET - PERCENT_OFFSET-8);
-		final int siteLength = input.readByte();
-		final byte[] siteBytes = new byte[siteLength];
-		input.read(siteBytes, 0, siteLength);
-		site = new String(siteBytes);
-	}
-
-	// Read the file to memory
+	// Read the header fields from the file
 	void read() throws Exception {
-		try (BufferedInputStream inputStream = new BufferedInputStream(
-			new FileInputStream(fileIn)))
-		{
-			final DataInputStream dataInputStream = new DataInputStream(inputStream);
-			readHeader(dataInputStream);
+		try {
+			final StratecFile stratecFile = new StratecFile(fileIn);
+			percent = stratecFile.getPercent();
+			site = stratecFile.getSite();
 		}
 		catch (final Exception e) {
 			throw new UnsupportedDataTypeException(
@@ -29,11 +29,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package sc.fiji.pQCT;
 
 import java.awt.Color;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.List;
 import java.util.StringTokenizer;
-import java.util.Vector;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.DoubleStream;
 
@@ -88,53 +84,9 @@ public class Cluster implements PlugIn {
 			}
 		}
 		else {
-			calibrationCoefficients = new double[2];
 			// Read calibration from TYP file database
-			final String typFileName = getInfoProperty(imageInfo, "Device");
-			try {
-				final ClassLoader loader = getClass().getClassLoader();
-				final InputStream ir = loader.getResourceAsStream("typ/" + typFileName);
-				final byte[] typFileData = new byte[ir.available()];
-				ir.read(typFileData);
-				ir.close();
-				final String typFiledDataString = new String(typFileData, "ISO-8859-1");
-				// break the typFileDataString into lines
-				final StringTokenizer st = new StringTokenizer(typFiledDataString,
-					"\n");
-				final List<String> typFileLines = new Vector<>();
-				while (st.hasMoreTokens()) {
-					typFileLines.add(st.nextToken());
-				}
-				// Search for XSlope and XInter
-				final String[] searchFor = { "XInter", "XSlope" };
-				for (int i = 0; i < searchFor.length; ++i) {
-					int index = 0;
-					String temp = typFileLines.get(index);
-					while (!temp.contains(searchFor[i]) && index < typFileLines.size()) {
-						++index;
-						temp = typFileLines.get(index);
-					}
-					if (temp.contains(searchFor[i])) { // Found line
-						final StringTokenizer st2 = new StringTokenizer(temp, "=");
-						final List<String> typFileLineTokens = new Vector<>();
-						while (st2.hasMoreTokens()) {
-							typFileLineTokens.add(st2.nextToken().trim());
-						}
-						calibrationCoefficients[i] = Double.valueOf(typFileLineTokens.get(
-							1));
-					}
-					else {
-						calibrationCoefficients[i] = i * 1000.0;
-					}
-				}
-				calibrationCoefficients[1] /= 1000.0; // 1.495
-			}
-			catch (final NullPointerException npe) {
-				IJ.log(".TYP file not found");
-			}
-			catch (final IOException e) {
-				IJ.error(".TYP file could not be read");
-			}
+			calibrationCoefficients = PqctAnalysis.readTypCalibration(
+				getInfoProperty(imageInfo, "Device"));
 		}
 		double resolution = cal.pixelWidth;
 		if (getInfoProperty(imageInfo, "Pixel Spacing") != null) {
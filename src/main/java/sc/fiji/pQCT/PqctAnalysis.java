@@ -29,9 +29,6 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package sc.fiji.pQCT;
 
 import java.awt.Color;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
@@ -55,17 +52,42 @@ import sc.fiji.pQCT.analysis.CorticalAnalysis;
 import sc.fiji.pQCT.analysis.DetermineAlpha;
 import sc.fiji.pQCT.analysis.DistributionAnalysis;
 import sc.fiji.pQCT.analysis.MassDistribution;
+import sc.fiji.pQCT.analysis.ScanAnalysis;
 import sc.fiji.pQCT.analysis.SoftTissueAnalysis;
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
 import sc.fiji.pQCT.io.ScaledImageData;
+import sc.fiji.pQCT.io.TypCalibration;
 import sc.fiji.pQCT.selectroi.RoiSelector;
-import sc.fiji.pQCT.selectroi.SelectROI;
-import sc.fiji.pQCT.selectroi.SelectSoftROI;
-import sc.fiji.pQCT.selectroi.SelectSoftROILasso;
 import sc.fiji.pQCT.utils.ResultsWriter;
 
 public class PqctAnalysis implements PlugIn {
 
+	// Set sector widths and division numbers
+	// Distribution analysis sectorWidth, Distribution analysis sectors,
+	// Concentric distribution analysis sectorWidth, Concentric distribution
+	// analysis sectors
+	static final int[] SECTORS_AND_DIVISIONS = { 10, 3, 10, 10 };
+	static final String[] TOP_LABELS = { "Flip_horizontal", "Flip_vertical",
+		"No_filtering", "Measurement_tube", "Lasso",
+		"Trabecular_analysis_visualisation", "Maximum_gradient_tracking" };
+	static final String[] CHOICE_LABELS = { "Bigger", "Smaller", "Left", "Right",
+		"Top", "Bottom", "Central", "Peripheral", "SecondLargest",
+		"TwoLargestLeft", "TwoLargestRight", "FirstFromLeft", "SecondFromLeft",
+		"ThirdFromLeft", "FourthFromLeft", "FifthFromLeft", "FirstFromTop",
+		"SecondFromTop", "ThirdFromTop", "FourthFromTop", "FifthFromTop" };
+	static final String[] ROTATION_LABELS = { "According_to_Imax/Imin",
+		"Furthest_point", "All_Bones_Imax/Imin", "Not_selected_to_right",
+		"Selected_to_right" };
+	static final String[] MIDDLE_LABELS = { "Analyse_cortical_results",
+		"Analyse_mass_distribution", "Analyse_concentric_density_distribution",
+		"Analyse_density_distribution", "Analyse_soft_tissues",
+		"Prevent_peeling_PVE_pixels", "Allow_cleaving", "Suppress_result_image",
+		"Limit_ROI_search_to_manually_selected",
+		"Set_distribution_results_rotation_manually" };
+	static final String[] BOTTOM_LABELS = { "Guess_flip", "Guess_right",
+		"Guess_larger", "Stacked_bones", "Guess_stacked", "Invert_flip_guess",
+		"Flip_distribution_results", "Save_visual_result_image_on_disk" };
+
 	@Override
 	public void run(final String arg) {
 		final ImagePlus imp = WindowManager.getCurrentImage();
@@ -74,18 +96,7 @@ public class PqctAnalysis implements PlugIn {
 			IJ.error("Distribution analysis expects 16-bit greyscale data");
 			return;
 		}
-		// Set sector widths and division numbers
-		// Distribution analysis sectorWidth, Distribution analysis sectors,
-		// Concentric distribution analysis sectorWidth, Concentric distribution
-		// analysis sectors
-		final int[] sectorsAndDivisions = { 10, 3, 10, 10 };
-		
-		//A ROI appears on the image every now and then, haven't figured out why -> remove any unwanted rois prior to soft-tissue analysis. If no ROIs are to be found when starting the analysis remove any that appear subsequently
-		byte removeROIs = 0;
-		if (imp.getRoi() == null){
-			removeROIs = 1;
-		}
-		
+		final int[] sectorsAndDivisions = SECTORS_AND_DIVISIONS.clone();
 
 		String imageInfo = new ImageInfo().getImageInfo(imp);
 		// Check image calibration
@@ -97,62 +108,11 @@ public class PqctAnalysis implements PlugIn {
 			}
 		}
 		else {
-			calibrationCoefficients = new double[2];
 			// Read calibration from TYP file database
-			final String typFileName = getInfoProperty(imageInfo, "Device");
-			try {
-				final ClassLoader loader = getClass().getClassLoader();
-				final InputStream ir = loader.getResourceAsStream("typ/" + typFileName);
-				final byte[] typFileData = new byte[ir.available()];
-				ir.read(typFileData);
-				ir.close();
-				final String typFiledDataString = new String(typFileData, "ISO-8859-1");
-				// break the typFileDataString into lines
-				final StringTokenizer st = new StringTokenizer(typFiledDataString,
-					"\n");
-				final List<String> typFileLines = new Vector<>();
-				while (st.hasMoreTokens()) {
-					typFileLines.add(st.nextToken());
-				}
-				// Search for XSlope and XInter
-				final String[] searchFor = { "XInter", "XSlope" };
-				for (int i = 0; i < searchFor.length; ++i) {
-					int index = 0;
-					String temp = typFileLines.get(index);
-					while (!temp.contains(searchFor[i]) && index < typFileLines.size()) {
-						++index;
-						temp = typFileLines.get(index);
-					}
-					if (temp.contains(searchFor[i])) { // Found line
-						final StringTokenizer st2 = new StringTokenizer(temp, "=");
-						final List<String> typFileLineTokens = new Vector<>();
-						while (st2.hasMoreTokens()) {
-							typFileLineTokens.add(st2.nextToken().trim());
-						}
-						calibrationCoefficients[i] = Double.valueOf(typFileLineTokens.get(
-							1));
-					}
-					else {
-						calibrationCoefficients[i] = i * 1000.0;
-					}
-				}
-				calibrationCoefficients[1] /= 1000.0; // 1.495
-			}
-			catch (final NullPointerException npe) {
-				IJ.log(".TYP file not found");
-			}
-			catch (final IOException e) {
-				IJ.error(".TYP file could not be read");
-			}
-		}
-		double resolution = cal.pixelWidth;
-		if (getInfoProperty(imageInfo, "Pixel Spacing") != null) {
-			String temp = getInfoProperty(imageInfo, "Pixel Spacing");
-			if (temp.contains("\\")) {
-				temp = temp.substring(0, temp.indexOf("\\"));
-			}
-			resolution = Double.valueOf(temp);
+			calibrationCoefficients = readTypCalibration(getInfoProperty(imageInfo,
+				"Device"));
 		}
+		final double resolution = getResolution(imageInfo, cal.pixelWidth);
 		
 		String imageName = getInfoProperty(imageInfo, "File Name");
 		if (imageName == null) {
@@ -168,8 +128,7 @@ public class PqctAnalysis implements PlugIn {
 		
 		// Get parameters for scaling the image and for thresholding
 		final GenericDialog dialog = new GenericDialog("Analysis parameters");
-		final String[] topLabels = { "Flip_horizontal", "Flip_vertical",
-			"No_filtering", "Measurement_tube", "Lasso","Trabecular_analysis_visualisation","Maximum_gradient_tracking" };
+		final String[] topLabels = TOP_LABELS;
 		final boolean[] defaultTopValues = new boolean[topLabels.length];
 		dialog.addCheckboxGroup(2,(int)  Math.ceil(((double) topLabels.length)/2d), topLabels, defaultTopValues);
 		dialog.addNumericField("Peeling_percentage", 20, 4, 8, null);
@@ -192,43 +151,24 @@ public class PqctAnalysis implements PlugIn {
 		dialog.addNumericField("Scaling_constant (intercept)", calibrationCoefficients[0], 4, 8, null);
 
 		// Get ROI selection
-		final String[] choiceLabels = { "Bigger", "Smaller", "Left", "Right", "Top",
-			"Bottom", "Central", "Peripheral", "SecondLargest", "TwoLargestLeft",
-			"TwoLargestRight", "FirstFromLeft", "SecondFromLeft", "ThirdFromLeft",
-			"FourthFromLeft", "FifthFromLeft", "FirstFromTop", "SecondFromTop",
-			"ThirdFromTop", "FourthFromTop", "FifthFromTop" };
+		final String[] choiceLabels = CHOICE_LABELS;
 		dialog.addChoice("Roi_selection", choiceLabels, choiceLabels[0]);
 		dialog.	addToSameRow();
 		dialog.addChoice("Soft_Tissue_Roi_selection", choiceLabels,
 			choiceLabels[0]);
-		final String[] rotationLabels = { "According_to_Imax/Imin",
-			"Furthest_point", "All_Bones_Imax/Imin", "Not_selected_to_right",
-			"Selected_to_right" };
+		final String[] rotationLabels = ROTATION_LABELS;
 		dialog.	addToSameRow();
 		dialog.addChoice("Rotation_selection", rotationLabels, rotationLabels[0]); // "According_to_Imax/Imin"
 
-		final String[] middleLabels = { "Analyse_cortical_results",
-			"Analyse_mass_distribution", "Analyse_concentric_density_distribution",
-			"Analyse_density_distribution", "Analyse_soft_tissues",
-			"Prevent_peeling_PVE_pixels", "Allow_cleaving", "Suppress_result_image",
-			"Limit_ROI_search_to_manually_selected",
-			"Set_distribution_results_rotation_manually" };
-		final boolean[] middleDefaults = new boolean[10];
+		final String[] middleLabels = MIDDLE_LABELS;
+		final boolean[] middleDefaults = new boolean[middleLabels.length];
 		middleDefaults[3] = true;
 		dialog.addCheckboxGroup(4, 3, middleLabels, middleDefaults);
 
 		dialog.addNumericField("Manual_rotation_[+-_180_deg]", 0.0, 4, 8, null);
 
-		final String[] bottomLabels = new String[8];
-		final boolean[] bottomDefaults = new boolean[8];
-		bottomLabels[0] = "Guess_flip";
-		bottomLabels[1] = "Guess_right";
-		bottomLabels[2] = "Guess_larger";
-		bottomLabels[3] = "Stacked_bones";
-		bottomLabels[4] = "Guess_stacked";
-		bottomLabels[5] = "Invert_flip_guess";
-		bottomLabels[6] = "Flip_distribution_results";
-		bottomLabels[7] = "Save_visual_result_image_on_disk";
+		final String[] bottomLabels = BOTTOM_LABELS;
+		final boolean[] bottomDefaults = new boolean[bottomLabels.length];
 		dialog.addCheckboxGroup(2, 5, bottomLabels, bottomDefaults);
 
 		dialog.addStringField("Image_save_path", Prefs.getDefaultDirectory(), 40);
@@ -261,40 +201,7 @@ public class PqctAnalysis implements PlugIn {
 		final String imageSaveName = dialog.getNextString();	//Get file saveName
 		final ScaledImageData scaledImageData;
 
-		
-
-		final short[] tempPointer = (short[]) imp.getProcessor().getPixels();
-		final int[] signedShort = new int[tempPointer.length];
-		final float[] floatPointer = (float[]) imp.getProcessor().toFloat(1, null)
-			.getPixels();
-		if (imp.getOriginalFileInfo().fileType == ij.io.FileInfo.GRAY16_SIGNED ||
-			cal.isSigned16Bit())
-		{
-			for (int i = 0; i < tempPointer.length; ++i) {
-				signedShort[i] = (int) (floatPointer[i] - Math.pow(2.0, 15.0));
-			}
-		}
-		else {
-			/*
-			Apply the original calibration of the image prior to applying the calibration got from the user
-			-> enables using ImageJ for figuring out the calibration without too much fuss.
-			*/
-			try {
-				double[] origCalCoeffs = imp.getOriginalFileInfo().coefficients;
-				if (origCalCoeffs == null) {
-					origCalCoeffs = cal.getCoefficients();
-				}
-				for (int i = 0; i < tempPointer.length; ++i) {
-					signedShort[i] = (int) (floatPointer[i] * origCalCoeffs[1] +
-						origCalCoeffs[0]);
-				}
-			}
-			catch (final Exception err) {
-				for (int i = 0; i < tempPointer.length; ++i) {
-					signedShort[i] = tempPointer[i];
-				}
-			}
-		}
+		final int[] signedShort = getSignedShort(imp);
 		final ImageAndAnalysisDetails details = new ImageAndAnalysisDetails(
 			defaultTopValues, thresholdsAndScaling, alignmentStrings, choiceLabels,
 			rotationLabels, middleDefaults, manualAlpha, bottomDefaults,
@@ -303,8 +210,6 @@ public class PqctAnalysis implements PlugIn {
 		scaledImageData = new ScaledImageData(signedShort, imp.getWidth(), imp
 			.getHeight(), resolution, details.scalingFactor, details.constant,
 			details.flipHorizontal, details.flipVertical, details.noFiltering);
-		RoiSelector roi = null;
-		RoiSelector softRoi = null;
 		
 		if (details.grTrackOn){
 			//Add point clustering onto ScaledImageData
@@ -320,61 +225,35 @@ public class PqctAnalysis implements PlugIn {
 		}
 		
 
+		final ScanAnalysis analysis;
 		try {
-			if (details.cOn || details.mOn || details.conOn || details.dOn) {
-				roi = new SelectROI(scaledImageData, details, imp,
-					details.boneThreshold, true);
-			}
-			if (details.stOn) {
-				// An ROI appears on the image every now and then, haven't figured out
-				// why -> remove any unwanted rois prior to soft-tissue analysis
-				if (removeROIs == 1){
-					imp.setRoi(null, false);
-				}
-				if (details.lassoOn){
-					softRoi = new SelectSoftROILasso(scaledImageData, details,imp);
-				}else{
-					softRoi = new SelectSoftROI(scaledImageData, details, imp);
-				}
-				if (roi == null) {
-					roi = softRoi;
-				}
-			}
+			analysis = new ScanAnalysis(scaledImageData, details, imp, true);
 		}
 		catch (final ExecutionException err) {
 			IJ.log("Caught sieve error " + err.toString());
 			return;
 		}
-
+		final RoiSelector roi = analysis.roi;
+		final RoiSelector softRoi = analysis.softRoi;
 		if (roi == null) {
 			IJ.log("No analysis was selected.");
 			return;
 		}
-		boolean alphaOn = false;
-		DetermineAlpha determineAlpha = null;
-		if (details.cOn || details.mOn || details.conOn || details.dOn) {
-			determineAlpha = new DetermineAlpha((SelectROI) roi, details);
-			alphaOn = true;
-		}
-
-		details.flipDistribution = roi.details.flipDistribution;
-		details.stacked = roi.details.stacked;
+		final DetermineAlpha determineAlpha = analysis.determineAlpha;
 
 		TextPanel textPanel = IJ.getTextPanel();
 		if (textPanel == null) {
 			textPanel = new TextPanel();
 		}
-		final ResultsWriter resultsWriter = new ResultsWriter(imageInfo, alphaOn);
+		final ResultsWriter resultsWriter = new ResultsWriter(imageInfo,
+			determineAlpha != null);
 
 		if (textPanel.getLineCount() == 0) {
 			resultsWriter.writeHeader(textPanel, details);
 		}
 
-		String results = "";
-		results = resultsWriter.printResults(results, details, imp);
-		if (determineAlpha != null) {
-			results = printAlpha(results, determineAlpha);
-		}
+		final String results = getResults(resultsWriter.printResults("",
+			analysis.details, imp), analysis, analysis.details);
 
 		ImagePlus resultImage = null;
 		boolean makeImage = true;
@@ -386,64 +265,37 @@ public class PqctAnalysis implements PlugIn {
 				imageSavePath);
 			resultImage.setTitle(imp.getTitle() + "-result");
 		}
-		if (details.stOn) {
-			final SoftTissueAnalysis softTissueAnalysis = new SoftTissueAnalysis(
-				(RoiSelector) softRoi);
-			results = printSoftTissueResults(results, softTissueAnalysis);
-			if (makeImage && resultImage != null) {
-				resultImage = tintSoftTissue(resultImage, softRoi.softSieve);
+		if (details.stOn && makeImage && resultImage != null) {
+			resultImage = tintSoftTissue(resultImage, softRoi.softSieve);
+		}
+		if (details.cOn && makeImage && resultImage != null) {
+			final CorticalAnalysis cortAnalysis = analysis.corticalAnalysis;
+			if (!roi.details.trAnaOn){
+				resultImage = tintBoneStratec(resultImage, roi.sieve, roi.scaledImage,
+					roi.details.marrowThreshold, cortAnalysis.cortexSieve);
+			}else{
+				//Visualise the peeled sieve used for trabecular bone analysis
+				resultImage = tintBoneStratec(resultImage, cortAnalysis.peeledSieve, roi.scaledImage,
+					roi.details.marrowThreshold, new byte[roi.width*roi.height]);
 			}
 		}
-		if (details.cOn) {
-			final CorticalAnalysis cortAnalysis = new CorticalAnalysis(
-				(SelectROI) roi);
-			//IJ.log("Printing cortical results");
-			results = printCorticalResults(results, cortAnalysis);
-			//IJ.log("Printed cortical results");
-			if (makeImage && resultImage != null) {
-				if (!roi.details.trAnaOn){
-					resultImage = tintBoneStratec(resultImage, roi.sieve, roi.scaledImage,
-						roi.details.marrowThreshold, cortAnalysis.cortexSieve);
-				}else{
-					//Visualise the peeled sieve used for trabecular bone analysis
-					resultImage = tintBoneStratec(resultImage, cortAnalysis.peeledSieve, roi.scaledImage,
-						roi.details.marrowThreshold, new byte[roi.width*roi.height]);
-				}
-			}
-
-		}
-		if (details.mOn) {
-			final MassDistribution massDistribution = new MassDistribution(
-				(SelectROI) roi, details, determineAlpha);
-			results = printMassDistributionResults(results, massDistribution,
-				details);
-		}
-		if (details.conOn) {
+		if (details.conOn && !details.dOn && makeImage && resultImage != null) {
 			final ConcentricRingAnalysis concentricRingAnalysis =
-				new ConcentricRingAnalysis((SelectROI) roi, details, determineAlpha);
-			results = printConcentricRingResults(results, concentricRingAnalysis,
-				details);
-			if (!details.dOn && makeImage && resultImage != null) {
-				resultImage = drawPeriRadii(resultImage,
-					concentricRingAnalysis.boneCenter, determineAlpha.pindColor,
-					concentricRingAnalysis.rU, concentricRingAnalysis.theta);
-				resultImage = drawMarrowCenter(resultImage, determineAlpha.alpha /
-					Math.PI * 180.0, concentricRingAnalysis.boneCenter);
-			}
-		}
-
-		if (details.dOn) {
+				analysis.concentricRingAnalysis;
+			resultImage = drawPeriRadii(resultImage,
+				concentricRingAnalysis.boneCenter, determineAlpha.pindColor,
+				concentricRingAnalysis.rU, concentricRingAnalysis.theta);
+			resultImage = drawMarrowCenter(resultImage, determineAlpha.alpha /
+				Math.PI * 180.0, concentricRingAnalysis.boneCenter);
+		}
+		if (details.dOn && makeImage && resultImage != null) {
 			final DistributionAnalysis distributionAnalysis =
-				new DistributionAnalysis((SelectROI) roi, details, determineAlpha);
-			results = printDistributionResults(results, distributionAnalysis,
-				details);
-			if (makeImage && resultImage != null) {
-				resultImage = drawRadii(resultImage, distributionAnalysis.marrowCenter,
-					determineAlpha.pindColor, distributionAnalysis.r,
-					distributionAnalysis.r2, distributionAnalysis.theta);
-				resultImage = drawMarrowCenter(resultImage, determineAlpha.alpha /
-					Math.PI * 180.0, distributionAnalysis.marrowCenter);
-			}
+				analysis.distributionAnalysis;
+			resultImage = drawRadii(resultImage, distributionAnalysis.marrowCenter,
+				determineAlpha.pindColor, distributionAnalysis.r,
+				distributionAnalysis.r2, distributionAnalysis.theta);
+			resultImage = drawMarrowCenter(resultImage, determineAlpha.alpha /
+				Math.PI * 180.0, distributionAnalysis.marrowCenter);
 		}
 
 		if ((details.dOn || details.conOn) && makeImage && resultImage != null) {
@@ -489,6 +341,102 @@ public class PqctAnalysis implements PlugIn {
 		return token2 != null ? token2.trim() : null;
 	}
 
+	/**
+	 * Reads the scaling of the scanner from the TYP file database.
+	 *
+	 * @param typFileName name of the TYP file, i.e. the Device of the scan.
+	 * @return {intercept, slope}, slope in the same units as in the ImageJ
+	 *         dialog.
+	 */
+	public static double[] readTypCalibration(final String typFileName) {
+		final double[] calibrationCoefficients = TypCalibration.getDefault()
+			.getScaling(typFileName);
+		if (calibrationCoefficients == null) {
+			IJ.log(".TYP file not found");
+			return new double[2];
+		}
+		return calibrationCoefficients;
+	}
+
+	public static double getResolution(final String imageInfo,
+		final double defaultResolution)
+	{
+		double resolution = defaultResolution;
+		if (getInfoProperty(imageInfo, "Pixel Spacing") != null) {
+			String temp = getInfoProperty(imageInfo, "Pixel Spacing");
+			if (temp.contains("\\")) {
+				temp = temp.substring(0, temp.indexOf("\\"));
+			}
+			resolution = Double.valueOf(temp);
+		}
+		return resolution;
+	}
+
+	public static int[] getSignedShort(final ImagePlus imp) {
+		final Calibration cal = imp.getCalibration();
+		final short[] tempPointer = (short[]) imp.getProcessor().getPixels();
+		final int[] signedShort = new int[tempPointer.length];
+		final float[] floatPointer = (float[]) imp.getProcessor().toFloat(1, null)
+			.getPixels();
+		if (imp.getOriginalFileInfo().fileType == ij.io.FileInfo.GRAY16_SIGNED ||
+			cal.isSigned16Bit())
+		{
+			for (int i = 0; i < tempPointer.length; ++i) {
+				signedShort[i] = (int) (floatPointer[i] - Math.pow(2.0, 15.0));
+			}
+		}
+		else {
+			/*
+			Apply the original calibration of the image prior to applying the calibration got from the user
+			-> enables using ImageJ for figuring out the calibration without too much fuss.
+			*/
+			try {
+				double[] origCalCoeffs = imp.getOriginalFileInfo().coefficients;
+				if (origCalCoeffs == null) {
+					origCalCoeffs = cal.getCoefficients();
+				}
+				for (int i = 0; i < tempPointer.length; ++i) {
+					signedShort[i] = (int) (floatPointer[i] * origCalCoeffs[1] +
+						origCalCoeffs[0]);
+				}
+			}
+			catch (final Exception err) {
+				for (int i = 0; i < tempPointer.length; ++i) {
+					signedShort[i] = tempPointer[i];
+				}
+			}
+		}
+		return signedShort;
+	}
+
+	// Appends the results of the analyses in the column order of the header
+	public static String getResults(String results, final ScanAnalysis analysis,
+		final ImageAndAnalysisDetails details)
+	{
+		if (analysis.determineAlpha != null) {
+			results = printAlpha(results, analysis.determineAlpha);
+		}
+		if (analysis.softTissueAnalysis != null) {
+			results = printSoftTissueResults(results, analysis.softTissueAnalysis);
+		}
+		if (analysis.corticalAnalysis != null) {
+			results = printCorticalResults(results, analysis.corticalAnalysis);
+		}
+		if (analysis.massDistribution != null) {
+			results = printMassDistributionResults(results,
+				analysis.massDistribution, details);
+		}
+		if (analysis.concentricRingAnalysis != null) {
+			results = printConcentricRingResults(results,
+				analysis.concentricRingAnalysis, details);
+		}
+		if (analysis.distributionAnalysis != null) {
+			results = printDistributionResults(results,
+				analysis.distributionAnalysis, details);
+		}
+		return results;
+	}
+
 	private static ImagePlus drawMarrowCenter(final ImagePlus tempImage,
 		final double aplha, final double[] marrowCenter)
 	{
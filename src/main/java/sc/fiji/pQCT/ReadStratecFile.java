@@ -28,13 +28,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package sc.fiji.pQCT;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 import javax.activation.UnsupportedDataTypeException;
 
@@ -45,6 +40,7 @@ import ij.io.FileInfo;
 import ij.io.OpenDialog;
 import ij.measure.Calibration;
 import ij.plugin.PlugIn;
+import sc.fiji.pQCT.io.StratecFile;
 
 // This file format is supported in SCIFIO already,
 // but we'll keep this plugin around for people who don't have it enabled.
@@ -52,7 +48,6 @@ import ij.plugin.PlugIn;
 // TODO Remove when ImageJ/Fiji comes with SCIFIO enabled by default
 public class ReadStratecFile extends ImagePlus implements PlugIn {
 
-	private static final int HEADER_LENGTH = 1609;
 	private String PatName;
 	private long PatNo;
 	private int PatMeasNo;
@@ -86,13 +81,33 @@ public class ReadStratecFile extends ImagePlus implements PlugIn {
 			fileName = od.getFileName();
 		}
 		if (fileName == null) return;
-		readFile(path);
-		fileInfo();
+		try {
+			read(new File(path + fileName));
+		}
+		catch (final IOException e) {
+			IJ.error("Reading the Stratec file failed: " + e.getMessage());
+			return;
+		}
 		if (arg.isEmpty() && getHeight() > 0) {
 			show();
 		}
 	}
 
+	/**
+	 * Reads the given Stratec file into this image without showing it or
+	 * opening any dialogs, e.g. for headless batch analysis.
+	 *
+	 * @param file the Stratec file (I*.M*) to read.
+	 * @throws IOException if the file is too short or could not be read.
+	 */
+	public void read(final File file) throws IOException {
+		fileName = file.getName();
+		final String path = file.getParent() == null ? "" : file.getParent() +
+			File.separator;
+		readFile(file, path);
+		fileInfo();
+	}
+
 	private void fileInfo() {
 		FileInfo fi = getFileInfo();
 		if (fi == null) {
@@ -111,78 +126,52 @@ public class ReadStratecFile extends ImagePlus implements PlugIn {
 		setFileInfo(fi);
 	}
 
-	private static String getNByteString(final ByteBuffer buffer, final int pos) {
-		buffer.position(pos);
-		final byte n = buffer.get();
-		final byte[] bytes = new byte[n];
-		buffer.get(bytes);
-		return new String(bytes);
-	}
-
-	private void readFile(final String path) {
-		final File file = new File(path + fileName);
-		final int bytes = (int) file.length();
-		if (bytes < HEADER_LENGTH) {
-			IJ.error("Reading the Stratec file failed: File length < 1609 bytes.");
-			return;
-		}
-		try (final DataInputStream dataInputStream = new DataInputStream(
-			new BufferedInputStream(new FileInputStream(file))))
-		{
-			// Allocate memory for reading the file into memory
-			final byte[] data = new byte[bytes];
-			// Read the data to memory
-			dataInputStream.read(data, 0, bytes);
-			final ByteBuffer buffer = ByteBuffer.wrap(data).order(
-				ByteOrder.LITTLE_ENDIAN);
-			readHeader(buffer);
-			readImage(buffer, path);
-		}
-		catch (final IOException e) {
-			IJ.error("Reading the Stratec file failed: " + e.getMessage());
-		}
+	private void readFile(final File file, final String path)
+		throws IOException
+	{
+		final StratecFile stratecFile = new StratecFile(file);
+		readHeader(stratecFile);
+		readImage(stratecFile, path);
 	}
 
-	private void readHeader(final ByteBuffer buffer)
+	private void readHeader(final StratecFile stratecFile)
 		throws UnsupportedDataTypeException
 	{
-		Device = getNByteString(buffer, 1050);
+		Device = stratecFile.getDevice();
 		if (!Device.toLowerCase().contains(".typ")) {
 			throw new UnsupportedDataTypeException("Device string not found.");
 		}
-		VoxelSize = buffer.getDouble(12);
-		ObjLen = buffer.getDouble(318);
-		MeasInfo = getNByteString(buffer, 662);
-		MeasDate = buffer.getInt(986);
-		PatMeasNo = buffer.getShort(1085);
-		PatNo = buffer.getInt(1087);
-		PatBirth = buffer.getInt(1091);
-		PatName = getNByteString(buffer, 1099);
-		PatID = getNByteString(buffer, 1282);
-		PicX0 = buffer.getShort(1525);
-		PicY0 = buffer.getShort(1527);
-		PicMatrixX = buffer.getShort(1529);
-		PicMatrixY = buffer.getShort(1531);
+		VoxelSize = stratecFile.getVoxelSize();
+		ObjLen = stratecFile.getObjLen();
+		MeasInfo = stratecFile.getMeasInfo();
+		MeasDate = stratecFile.getMeasDate();
+		PatMeasNo = stratecFile.getPatMeasNo();
+		PatNo = stratecFile.getPatNo();
+		PatBirth = stratecFile.getPatBirth();
+		PatName = stratecFile.getPatName();
+		PatID = stratecFile.getPatID();
+		PicX0 = stratecFile.getPicX0();
+		PicY0 = stratecFile.getPicY0();
+		PicMatrixX = stratecFile.getPicMatrixX();
+		PicMatrixY = stratecFile.getPicMatrixY();
 	}
 
-	private void readImage(final ByteBuffer buffer, final String path) {
+	private void readImage(final StratecFile stratecFile, final String path)
+		throws IOException
+	{
 		final ImagePlus tempImage = NewImage.createShortImage(fileName + " " +
 			Double.toString(VoxelSize), PicMatrixX, PicMatrixY, 1,
 			NewImage.FILL_BLACK);
-		setImage(tempImage.getImage());
 		setProcessor(fileName, tempImage.getProcessor());
 		setProperties(path);
 		final short[] pixels = (short[]) getProcessor().getPixels();
-		final int size = PicMatrixX * PicMatrixY;
+		stratecFile.readPixels(pixels);
 		int min = Short.MAX_VALUE;
 		int max = Short.MIN_VALUE;
-		buffer.position(HEADER_LENGTH);
-		for (int i = 0; i < size; i++) {
-			final int pixel = readSignedShort(buffer);
+		for (final short pixel : pixels) {
 			final int unsignedShort = pixel & 0xFFFF;
 			min = Math.min(min, unsignedShort);
 			max = Math.max(max, unsignedShort);
-			pixels[i] = (short) pixel;
 		}
 		setDisplayRange(min, max);
 		final Calibration cal = getCalibration();
@@ -192,12 +181,6 @@ public class ReadStratecFile extends ImagePlus implements PlugIn {
 		cal.pixelWidth = cal.pixelHeight = cal.pixelDepth = VoxelSize;
 	}
 
-	private static int readSignedShort(final ByteBuffer buffer) {
-		final int bitMask = 0x8000;
-		final short pixel = buffer.getShort();
-		return (pixel >= 0 ? -bitMask : bitMask - 1) + pixel;
-	}
-
 	private void setProperties(final String directory) {
 		final String[] propertyNames = { "File Name", "File Path", "Pixel Spacing",
 			"ObjLen", "MeasInfo", "Acquisition Date", "Device", "PatMeasNo", "PatNo",
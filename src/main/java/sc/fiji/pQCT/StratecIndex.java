@@ -0,0 +1,327 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import sc.fiji.pQCT.io.StratecFile;
+
+/**
+ * Persistent index of the headers of the Stratec files (I*.M*) in an archive,
+ * so that scans can be selected by patient, date, device or site without
+ * opening every image. Only the header of each file and the site and percent
+ * of its C* file are read. The index is a tab separated text file sorted by
+ * path, and updating it re-reads only the files that are new or have changed
+ * size or modification time since the previous update.
+ * <p>
+ * Usage:
+ * {@code java sc.fiji.pQCT.StratecIndex index.txt update <directory>...}
+ * {@code java sc.fiji.pQCT.StratecIndex index.txt query [patient=...] [from=yyyymmdd] [to=yyyymmdd] [device=...] [site=...]}
+ * </p>
+ * The files are indexed by their absolute, normalised path, so the same
+ * archive is indexed once whichever way its directory is given. The query
+ * prints the paths of the matching files, one per line.
+ */
+public class StratecIndex {
+
+	private static final String HEADER = String.join("\t", "File Path",
+		"File Size", "Last Modified", "Patient's Name", "Patient ID",
+		"Acquisition Date", "Device", "ObjLen", "Site", "Percent");
+	private final File indexFile;
+	private final Map<String, Entry> entries = new TreeMap<>();
+
+	public static class Entry {
+
+		public final String path;
+		public final long size;
+		public final long lastModified;
+		public final String patName;
+		public final String patID;
+		public final long measDate;
+		public final String device;
+		public final double objLen;
+		public final String site;
+		public final double percent;
+
+		private Entry(final String[] fields) {
+			path = fields[0];
+			size = Long.parseLong(fields[1]);
+			lastModified = Long.parseLong(fields[2]);
+			patName = fields[3];
+			patID = fields[4];
+			measDate = Long.parseLong(fields[5]);
+			device = fields[6];
+			objLen = Double.parseDouble(fields[7]);
+			site = fields[8];
+			percent = Double.parseDouble(fields[9]);
+		}
+
+		private Entry(final File file) throws IOException {
+			path = indexPath(file.toPath());
+			size = file.length();
+			lastModified = file.lastModified();
+			final StratecFile stratecFile = new StratecFile(file);
+			patName = clean(stratecFile.getPatName());
+			patID = clean(stratecFile.getPatID());
+			measDate = stratecFile.getMeasDate();
+			device = clean(stratecFile.getDevice());
+			objLen = stratecFile.getObjLen();
+			// The site is stored in the C* file of the same measurement
+			final File ctFile = new File(file.getParentFile(), "C" + file.getName()
+				.substring(1));
+			String ctSite = "";
+			double ctPercent = Double.NaN;
+			if (ctFile.isFile()) {
+				try {
+					final StratecFile ct = new StratecFile(ctFile);
+					ctSite = clean(ct.getSite());
+					ctPercent = ct.getPercent();
+				}
+				catch (final IOException | RuntimeException e) {
+					// Index the scan without a site
+				}
+			}
+			site = ctSite;
+			percent = ctPercent;
+		}
+
+		private boolean isCurrent(final File file) {
+			return size == file.length() && lastModified == file.lastModified();
+		}
+
+		private String toLine() {
+			return String.join("\t", path, Long.toString(size), Long.toString(
+				lastModified), patName, patID, Long.toString(measDate), device, Double
+					.toString(objLen), site, Double.toString(percent));
+		}
+
+		private static String clean(final String value) {
+			return value.replaceAll("[\t\r\n]", " ").trim();
+		}
+	}
+
+	/**
+	 * Opens the index in the given file, or an empty index if the file does not
+	 * exist yet.
+	 */
+	public StratecIndex(final File indexFile) throws IOException {
+		this.indexFile = indexFile;
+		if (!indexFile.isFile()) {
+			return;
+		}
+		try (final BufferedReader reader = Files.newBufferedReader(indexFile
+			.toPath(), StandardCharsets.UTF_8))
+		{
+			String line = reader.readLine();
+			if (line == null || !line.equals(HEADER)) {
+				throw new IOException(indexFile + " is not a Stratec file index");
+			}
+			while ((line = reader.readLine()) != null) {
+				final String[] fields = line.split("\t", -1);
+				if (fields.length != 10) {
+					throw new IOException("Malformed index line: " + line);
+				}
+				final Entry entry = new Entry(fields);
+				entries.put(entry.path, entry);
+			}
+		}
+	}
+
+	/**
+	 * Brings the index up to date with the Stratec files in the directory and
+	 * its subdirectories. Files that have not changed since they were indexed
+	 * are not opened, and entries of files that no longer exist are removed.
+	 *
+	 * @return the number of files whose header was read.
+	 */
+	public int update(final File directory) throws IOException {
+		final Path root = directory.toPath().toAbsolutePath().normalize();
+		final List<File> files;
+		try (final Stream<Path> paths = Files.walk(root)) {
+			files = paths.filter(Files::isRegularFile).map(Path::toFile).filter(
+				file -> file.getName().matches("(?i)I.*\\.M.*")).collect(Collectors
+					.toList());
+		}
+		final String prefix = indexPath(root) + File.separator;
+		final Iterator<Entry> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			final Entry entry = iterator.next();
+			if (entry.path.startsWith(prefix) && !new File(entry.path).isFile()) {
+				iterator.remove();
+			}
+		}
+		int read = 0;
+		for (final File file : files) {
+			final Entry entry = entries.get(indexPath(file.toPath()));
+			if (entry != null && entry.isCurrent(file)) {
+				continue;
+			}
+			try {
+				final Entry updated = new Entry(file);
+				entries.put(updated.path, updated);
+				++read;
+			}
+			catch (final IOException | RuntimeException e) {
+				System.err.println("Indexing " + file.getPath() + " failed: " + e
+					.toString());
+			}
+		}
+		return read;
+	}
+
+	/** The key of the file in the index */
+	private static String indexPath(final Path path) {
+		return path.toAbsolutePath().normalize().toString();
+	}
+
+	/** Writes the index to its file, replacing the previous version */
+	public void save() throws IOException {
+		final File parent = indexFile.getAbsoluteFile().getParentFile();
+		final Path temp = Files.createTempFile(parent.toPath(), indexFile
+			.getName(), ".tmp");
+		try (final BufferedWriter writer = Files.newBufferedWriter(temp,
+			StandardCharsets.UTF_8))
+		{
+			writer.write(HEADER);
+			writer.write("\n");
+			for (final Entry entry : entries.values()) {
+				writer.write(entry.toLine());
+				writer.write("\n");
+			}
+		}
+		Files.move(temp, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public Collection<Entry> getEntries() {
+		return entries.values();
+	}
+
+	/**
+	 * Returns the indexed scans matching all the given criteria, in path order.
+	 *
+	 * @param patient patient name or ID, ignoring case, or null for any.
+	 * @param from first acquisition date (yyyymmdd), inclusive, or null.
+	 * @param to last acquisition date (yyyymmdd), inclusive, or null.
+	 * @param device device (TYP file) name, ignoring case, or null for any.
+	 * @param site measured site, ignoring case, or null for any.
+	 */
+	public List<Entry> query(final String patient, final Long from,
+		final Long to, final String device, final String site)
+	{
+		final List<Entry> matches = new ArrayList<>();
+		for (final Entry entry : entries.values()) {
+			if (patient != null && !patient.equalsIgnoreCase(entry.patName) &&
+				!patient.equalsIgnoreCase(entry.patID))
+			{
+				continue;
+			}
+			if ((from != null && entry.measDate < from) || (to != null &&
+				entry.measDate > to))
+			{
+				continue;
+			}
+			if ((device != null && !device.equalsIgnoreCase(entry.device)) ||
+				(site != null && !site.equalsIgnoreCase(entry.site)))
+			{
+				continue;
+			}
+			matches.add(entry);
+		}
+		return matches;
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 2 || !(args[1].equals("update") || args[1].equals(
+			"query")))
+		{
+			System.err.println("Usage: StratecIndex <index file> update " +
+				"<directory>...\n       StratecIndex <index file> query " +
+				"[patient=...] [from=yyyymmdd] [to=yyyymmdd] [device=...] [site=...]");
+			System.exit(1);
+		}
+		final StratecIndex index = new StratecIndex(new File(args[0]));
+		if (args[1].equals("update")) {
+			int read = 0;
+			for (int i = 2; i < args.length; ++i) {
+				read += index.update(new File(args[i]));
+			}
+			index.save();
+			System.err.println("Read " + read + " headers, " + index.getEntries()
+				.size() + " scans indexed");
+			return;
+		}
+		String patient = null;
+		Long from = null;
+		Long to = null;
+		String device = null;
+		String site = null;
+		for (int i = 2; i < args.length; ++i) {
+			final String[] criterion = args[i].split("=", 2);
+			final String value = criterion.length > 1 ? criterion[1] : "";
+			switch (criterion[0]) {
+				case "patient":
+					patient = value;
+					break;
+				case "from":
+					from = Long.parseLong(value);
+					break;
+				case "to":
+					to = Long.parseLong(value);
+					break;
+				case "device":
+					device = value;
+					break;
+				case "site":
+					site = value;
+					break;
+				default:
+					System.err.println("Unknown criterion " + args[i]);
+					System.exit(1);
+			}
+		}
+		for (final Entry entry : index.query(patient, from, to, device, site)) {
+			System.out.println(entry.path);
+		}
+	}
+}
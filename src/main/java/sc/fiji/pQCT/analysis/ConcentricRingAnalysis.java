@@ -35,6 +35,7 @@ import java.util.Vector;
 
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
 import sc.fiji.pQCT.selectroi.SelectROI;
+import sc.fiji.pQCT.utils.PolarImage;
 
 public class ConcentricRingAnalysis {
 
@@ -51,33 +52,20 @@ public class ConcentricRingAnalysis {
 	private final double divisions;
 	// Variables for moment calculations
 	private final Vector<Integer> pind;
-	private final SelectROI roi;
+	private final PolarImage polarImage;
 	private final List<double[]> bMDJ = new Vector<>();
 
 	public ConcentricRingAnalysis(final SelectROI roi,
 		final ImageAndAnalysisDetails details, final DetermineAlpha determineAlpha)
 	{
 		pind = determineAlpha.pind;
-		this.roi = roi;
 		sectorWidth = details.concentricSector;
 		divisions = details.concentricDivisions;
 		height = roi.height;
 		width = roi.width;
 		pixelSpacing = roi.pixelSpacing;
-		boneCenter = new double[2];
-		int points = 0;
-		for (int j = 0; j < height; j++) {
-			final int offset = j * width;
-			for (int i = 0; i < width; i++) {
-				if (roi.sieve[offset + i] > 0) {
-					boneCenter[0] += i;
-					boneCenter[1] += j;
-					++points;
-				}
-			}
-		}
-		boneCenter[0] = boneCenter[0] / points;
-		boneCenter[1] = boneCenter[1] / points;
+		polarImage = roi.getSievePolarImage();
+		boneCenter = new double[] { polarImage.centreX, polarImage.centreY };
 		final int size = (int) (360.0 / sectorWidth);
 		pericorticalRadii = new double[size];
 		calculateRadii();
@@ -91,41 +79,14 @@ public class ConcentricRingAnalysis {
 		for (int i = 0; i < divisions; ++i) {
 			bMDJ.add(new double[360]);
 		}
-		final double rIncrement = 0.1;
 		// Finding endocortical and pericortical
 		// borders uMath.sing polar coordinates
 		for (int et = 0; et < 360; ++et) {
-			final Vector<Double> BMD_temp = new Vector<>();
-			theta[et] = Math.PI / 180.0 * et;
-			final double cosTheta = Math.cos(theta[et]);
-			final double sinTheta = Math.sin(theta[et]);
-			final double cX = boneCenter[0];
-			final double cY = boneCenter[1];
-			double r = 0;
-			while (roi.sieve[(int) (cX + r * cosTheta) + ((int) ((cY + r *
-				sinTheta)) * width)] > 0 || roi.sieve[(int) (cX + (r + 0.5) *
-					cosTheta) + ((int) ((cY + (r + 0.5) * sinTheta)) * width)] > 0 ||
-				roi.sieve[(int) (cX + (r + 1) * cosTheta) + ((int) ((cY + (r + 1) *
-					sinTheta)) * width)] > 0 || roi.sieve[(int) (cX + (r + 2) *
-						cosTheta) + ((int) ((cY + (r + 2) * sinTheta)) * width)] > 0 ||
-				roi.sieve[(int) (cX + (r + 3) * cosTheta) + ((int) ((cY + (r + 3) *
-					sinTheta)) * width)] > 0 || roi.sieve[(int) (cX + (r + 4) *
-						cosTheta) + ((int) ((cY + (r + 4) * sinTheta)) * width)] > 0 ||
-				roi.sieve[(int) (cX + (r + 6) * cosTheta) + ((int) ((cY + (r + 6) *
-					sinTheta)) * width)] > 0)
-			{
-				// Calculate BMC rho*dV, dV=dA*slice_thickness
-				// dA=pi*((r(et)*resolution)^2-((r(et)-0.1)*resolution)^2),
-				// slice_thickness = 1 mm
-				// (could be set to actual slice thickness, but makes no
-				// difference for comparisons -> 1 mm is used bMD divided by
-				// 1000, because unit is mg/cm3 and area is mm2
-				BMD_temp.add(roi.scaledImage[(int) (cX + r * cosTheta) + ((int) ((cY +
-					r * sinTheta)) * width)]);
-				r += rIncrement;
-			}
-			rU[et] = r;
-			final int analysisThickness = BMD_temp.size();
+			theta[et] = polarImage.theta[et];
+			// The density sampled while the sieve continues along the ray
+			final int analysisThickness = polarImage.lengths[et];
+			rU[et] = polarImage.endRadii[et];
+			final int offset = et * polarImage.columns;
 			// Dividing the cortex to three divisions -> save the mean vBMD for each
 			// division
 			if (analysisThickness < divisions) {
@@ -138,7 +99,7 @@ public class ConcentricRingAnalysis {
 					divisions); ka < (int) (analysisThickness * (div + 1.0) /
 						divisions); ka++)
 				{
-					bMDJ.get(div)[et] += BMD_temp.get(ka);
+					bMDJ.get(div)[et] += polarImage.values[offset + ka];
 					mo++;
 				}
 				bMDJ.get(div)[et] /= mo;
@@ -34,10 +34,12 @@ package sc.fiji.pQCT.analysis;
 //import ij.process.ImageProcessor;
 //import ij.ImagePlus;
 
-import java.util.concurrent.ExecutionException;
 import java.util.stream.IntStream;
 
+import sc.fiji.pQCT.selectroi.BoundingBox;
+import sc.fiji.pQCT.selectroi.PeelingMap;
 import sc.fiji.pQCT.selectroi.SelectROI;
+import sc.fiji.pQCT.selectroi.SieveMoments;
 
 public class CorticalAnalysis {
 
@@ -71,33 +73,41 @@ public class CorticalAnalysis {
 	public double peeledTrA;
 	public double peeledTrD;
 
-	public CorticalAnalysis(final SelectROI roi) {
-		ToA = 0;
-		ToD = 0;
+	/**
+	 * @param thresholdRoi the bone segmented at the rotation threshold, or null
+	 *          if that segmentation failed, in which case CoD and CoA are not
+	 *          calculated.
+	 */
+	public CorticalAnalysis(final SelectROI roi, final SelectROI thresholdRoi) {
+		final SieveMoments sieveMoments = roi.getSieveMoments();
+		ToA = sieveMoments.area;
+		ToD = sieveMoments.density;
 		TrA = 0;
 		TrD = 0;
 		marrowArea = 0;
 		marrowDensity = 0;
-		final int iterations = roi.width * roi.height;
-		for (int i = 0; i < iterations; i++) {
-			if (roi.sieve[i] <= 0) {
-				continue;
-			}
-			final double value = roi.scaledImage[i];
-			ToA++;
-			ToD += value;
-			// Marrow analysis
-			if (value < roi.details.marrowThreshold) {
-				marrowArea++;
-				marrowDensity += value;
-			}
-			
-			// Trabecular analysis
-			if (value >= roi.details.softThreshold && value < roi.details.bMDThreshold) {
-				TrA++;
-				TrD += value;
+		// The sieve only covers its bounding box
+		final BoundingBox bounds = sieveMoments.bounds;
+		for (int j = bounds.minY; j <= bounds.maxY; j++) {
+			for (int i = j * roi.width + bounds.minX; i <= j * roi.width +
+				bounds.maxX; i++)
+			{
+				if (roi.sieve[i] <= 0) {
+					continue;
+				}
+				final double value = roi.scaledImage[i];
+				// Marrow analysis
+				if (value < roi.details.marrowThreshold) {
+					marrowArea++;
+					marrowDensity += value;
+				}
+				
+				// Trabecular analysis
+				if (value >= roi.details.softThreshold && value < roi.details.bMDThreshold) {
+					TrA++;
+					TrD += value;
+				}
 			}
-			
 		}
 		ToD /= ToA;
 		TrD /= TrA;
@@ -109,42 +119,37 @@ public class CorticalAnalysis {
 		marrowArea *= spacingSq;
 		
 		//Trabecular analysis
-		peeledSieve = roi.sieve.clone();
-		
 		//Visualise sieve before and after
-		//ImagePlus tempImage = new ImagePlus("Prior to peeling", new ByteProcessor(roi.width,roi.height, peeledSieve.clone()));
+		//ImagePlus tempImage = new ImagePlus("Prior to peeling", new ByteProcessor(roi.width,roi.height, roi.sieve.clone()));
 		//tempImage.setDisplayRange(0d,1d);
 		//tempImage.show();
 		
-		//Peel sieve until less than 100-roi.details.peelingPercentage
-		double peeledA = boneAreaPixels;
-		//IJ.log("Start peeling");
-		while (peeledA > boneAreaPixels*((100d-roi.details.peelingPercentage)/100d)){
-			peeledSieve = DistributionAnalysis.erode(peeledSieve, roi.width, roi.height, (byte) 0);
-			peeledA = 0d;
-			for (int i = 0; i < iterations; i++) {
-				if (peeledSieve[i] >= 1) {
-					++peeledA;
-				}
-			}
-		
-		}
+		//Peel sieve until less than 100-roi.details.peelingPercentage, the
+		//erosion depth of each pixel gives the number of erosions needed
+		final PeelingMap peelingMap = roi.getSievePeelingMap();
+		final int erosions = peelingMap.getErosions(roi.details.peelingPercentage);
+		peeledSieve = peelingMap.peel(roi.sieve, erosions);
+		// The peeled statistics also only need the bounding box of the sieve
 		//ImagePlus tempImage2 = new ImagePlus("After peeling",new ByteProcessor(roi.width,roi.height, peeledSieve.clone()));
 		//tempImage2.setDisplayRange(0d,1d);
 		//tempImage2.show();
 
 		
-		//IJ.log(String.format("After peeling %2f %s",peeledA/boneAreaPixels*100d,"%"));
+		//IJ.log(String.format("After peeling %2f %s",peelingMap.getRemaining(erosions)/boneAreaPixels*100d,"%"));
 		//calculate peeledTrA and peeledTrD
 		peeledTrA = 0d;
 		peeledTrD = 0d;
-		for (int i = 0; i < iterations; i++) {
-			if (peeledSieve[i] <= 0) {
-				continue;
+		for (int j = bounds.minY; j <= bounds.maxY; j++) {
+			for (int i = j * roi.width + bounds.minX; i <= j * roi.width +
+				bounds.maxX; i++)
+			{
+				if (peeledSieve[i] <= 0) {
+					continue;
+				}
+				final double value = roi.scaledImage[i];
+				peeledTrA++;
+				peeledTrD += value;
 			}
-			final double value = roi.scaledImage[i];
-			peeledTrA++;
-			peeledTrD += value;
 		}
 		peeledTrD /= peeledTrA;
 		peeledTrA *= spacingSq;
@@ -260,27 +265,27 @@ public class CorticalAnalysis {
 		// Calculate Stratec/Geanie compatible CoA and CoD, i.e. define a ROI larger
 		// than the bone and calculate
 		// CoD and CoA from the ROI independent of whether the cortex is continuous.
-		final SelectROI tempRoi;
-		try {
-			tempRoi = new SelectROI(roi.scaledImageData, roi.details, roi.imp,
-				roi.details.rotationThreshold, false);
-		}
-		catch (final ExecutionException e) {
-			e.printStackTrace();
+		final SelectROI tempRoi = thresholdRoi;
+		if (tempRoi == null) {
 			return;
 		}
 		CoD = 0;
 		CoA = 0;
 		int CoDcounter = 0;
 		cortexSieve = new byte[roi.scaledImage.length];
-		for (int j = 0; j < roi.scaledImage.length; ++j) {
-			if (tempRoi.sieve[j] > 0 && roi.scaledImage[j] >= roi.BMDthreshold) {
-				CoD += roi.scaledImage[j];
-				++CoDcounter;
-				cortexSieve[j] = 1;
-			}
-			if (tempRoi.sieve[j] > 0 && roi.scaledImage[j] >= roi.areaThreshold) {
-				CoA += 1.0;
+		final BoundingBox tempBounds = tempRoi.getSieveMoments().bounds;
+		for (int row = tempBounds.minY; row <= tempBounds.maxY; ++row) {
+			for (int j = row * roi.width + tempBounds.minX; j <= row * roi.width +
+				tempBounds.maxX; ++j)
+			{
+				if (tempRoi.sieve[j] > 0 && roi.scaledImage[j] >= roi.BMDthreshold) {
+					CoD += roi.scaledImage[j];
+					++CoDcounter;
+					cortexSieve[j] = 1;
+				}
+				if (tempRoi.sieve[j] > 0 && roi.scaledImage[j] >= roi.areaThreshold) {
+					CoA += 1.0;
+				}
 			}
 		}
 		CoD /= CoDcounter;
@@ -33,13 +33,13 @@ import static java.util.stream.IntStream.range;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
 import java.util.stream.IntStream;
 
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
 import sc.fiji.pQCT.selectroi.DetectedEdge;
 import sc.fiji.pQCT.selectroi.RoiSelector;
 import sc.fiji.pQCT.selectroi.SelectROI;
+import sc.fiji.pQCT.selectroi.SieveMoments;
 
 public class DetermineAlpha {
 
@@ -50,8 +50,14 @@ public class DetermineAlpha {
 	public double distanceBetweenBones;
 	Vector<Integer> pind;
 
+	/**
+	 * @param thresholdRoi the bone segmented at the rotation threshold, needed
+	 *          to rotate according to the other bone. Null if that segmentation
+	 *          failed or is not needed, in which case the other bone rotations
+	 *          are not calculated.
+	 */
 	public DetermineAlpha(final SelectROI roi,
-		final ImageAndAnalysisDetails details)
+		final ImageAndAnalysisDetails details, final SelectROI thresholdRoi)
 	{
 		this.details = details;
 		// Calculate CSMIs and rotation angle to align maximal and minimal bending
@@ -62,8 +68,7 @@ public class DetermineAlpha {
 		final String choice = details.rotationChoice;
 		final String[] labels = details.rotationLabels;
 		if (choice.equals(labels[0])) {
-			final double[] csmiValues = csmi(roi.sieve, roi.width, roi.height);
-			determineMomentAlpha(csmiValues);
+			determineMomentAlpha(roi.getSieveMoments());
 		}
 		if (choice.equals(labels[2])) {
 			final int voxels = roi.width * roi.height;
@@ -71,8 +76,8 @@ public class DetermineAlpha {
 			final double[] image = roi.scaledImage;
 			range(0, voxels).filter(i -> image[i] >= details.rotationThreshold)
 				.forEach(i -> tempCsmiSieve[i] = 1);
-			final double[] csmiValues = csmi(tempCsmiSieve, roi.width, roi.height);
-			determineMomentAlpha(csmiValues);
+			determineMomentAlpha(new SieveMoments(tempCsmiSieve, null, roi.width,
+				roi.height));
 		}
 		// Rotation according to the furthest point
 		if (choice.equals(labels[1])) {
@@ -93,8 +98,8 @@ public class DetermineAlpha {
 			final DetectedEdge edge = roi.edges.get(roi.selection);
 			final double[] radii = new double[edge.length];
 			for (int i = 0; i < edge.length; ++i) {
-				final double x = edge.iit.get(i) - marrowCenter[0];
-				final double y = edge.jiit.get(i) - marrowCenter[1];
+				final double x = edge.contour.getI(i) - marrowCenter[0];
+				final double y = edge.contour.getJ(i) - marrowCenter[1];
 				radii[i] = Math.sqrt(x * x + y * y);
 			}
 			final double[] sumRadii = new double[radii.length];
@@ -108,21 +113,16 @@ public class DetermineAlpha {
 			while (Double.compare(sumRadii[index], greatestR) != 0) {
 				++index;
 			}
-			final double x = edge.iit.get(index) - marrowCenter[0];
-			final double y = edge.jiit.get(index) - marrowCenter[1];
+			final double x = edge.contour.getI(index) - marrowCenter[0];
+			final double y = edge.contour.getJ(index) - marrowCenter[1];
 			alpha = Math.PI - Math.atan2(y, x);
 		}
 
 		// Rotate unselected bone to right
 		if (choice.equals(labels[3]) || choice.equals(labels[4])) {
 			// Create temp roi for rotating using rotationThreshold..
-			final SelectROI tempRoi;
-			try {
-				tempRoi = new SelectROI(roi.scaledImageData, roi.details, roi.imp,
-					details.rotationThreshold, false);
-			}
-			catch (final ExecutionException e) {
-				e.printStackTrace();
+			final SelectROI tempRoi = thresholdRoi;
+			if (tempRoi == null) {
 				return;
 			}
 			// Find the second biggest bone (could be bigger than the selected roi...
@@ -136,15 +136,13 @@ public class DetermineAlpha {
 				otherBoneSelection = twoBones[0];
 			}
 			// Fill a sieve with a second bone and acquire coordinates...
-			final Vector<Integer> sRoiI = tempRoi.edges.get(otherBoneSelection).iit;
-			final Vector<Integer> sRoiJ = tempRoi.edges.get(otherBoneSelection).jiit;
-			final byte[] secondBoneSieve = tempRoi.fillSieve(sRoiI, sRoiJ,
-				tempRoi.width, tempRoi.height, tempRoi.scaledImage,
-				details.rotationThreshold);
-			final double[] selectedBoneCenter = calculateCenter(tempRoi.sieve,
-				tempRoi.width, tempRoi.height); /*Calculate selected bone centre*/
-			final double[] otherBoneCenter = calculateCenter(secondBoneSieve,
-				tempRoi.width, tempRoi.height); /*Calculate other bone centre*/
+			final byte[] secondBoneSieve = tempRoi.fillSieve(tempRoi.edges.get(
+				otherBoneSelection).contour, tempRoi.width, tempRoi.height,
+				tempRoi.scaledImage, details.rotationThreshold);
+			final double[] selectedBoneCenter = tempRoi.getSieveMoments()
+				.getCentre(); /*Calculate selected bone centre*/
+			final double[] otherBoneCenter = new SieveMoments(secondBoneSieve, null,
+				tempRoi.width, tempRoi.height).getCentre(); /*Calculate other bone centre*/
 			final double x;
 			final double y;
 			if (choice.equals(labels[3])) {
@@ -190,67 +188,16 @@ public class DetermineAlpha {
 
 	}
 
-	private static double[] calculateCenter(final byte[] sieve, final int width,
-		final int height)
-	{
-		final double[] originBone = new double[3];
-		for (int j = 0; j < height; ++j) {
-			for (int i = 0; i < width; ++i) {
-				if (sieve[i + j * width] > 0) {
-					originBone[0] += i;
-					originBone[1] += j;
-					originBone[2] += 1;
-				}
-			}
-		}
-		originBone[0] /= originBone[2];
-		originBone[1] /= originBone[2];
-		return originBone;
-	}
-
-	private static double[] csmi(final byte[] sieve, final int width,
-		final int height)
-	{
-		final double[] cortexCenter = new double[2];
-		double points = 0;
-		final Vector<Integer> bmcI = new Vector<>();
-		final Vector<Integer> bmcJ = new Vector<>();
-		for (int j = 0; j < height; j++) {
-			for (int i = 0; i < width; i++) {
-				if (sieve[i + j * width] > 0) {
-					cortexCenter[0] += i;
-					cortexCenter[1] += j;
-					bmcI.add(i);
-					bmcJ.add(j);
-					++points;
-				}
-			}
-		}
-		cortexCenter[0] /= points;
-		cortexCenter[1] /= points;
-
-		final double[] returnValues = new double[3];
-		// Calculating cross-sectional moment of inertia in the original image
-		// orientation
-		for (int i = 0; i < bmcI.size(); i++) {
-			final double x = bmcI.get(i) - cortexCenter[0];
-			final double y = bmcJ.get(i) - cortexCenter[1];
-			returnValues[0] += x * x;
-			returnValues[1] += y * y;
-			returnValues[2] += x * y;
-		}
-		return returnValues;
-	}
-
-	private void determineMomentAlpha(final double[] csmiValues) {
-		final double xmax = csmiValues[0];
-		final double ymax = csmiValues[1];
+	private void determineMomentAlpha(final SieveMoments moments) {
+		// Cross-sectional moments of inertia in the original image orientation
+		final double xmax = moments.xx;
+		final double ymax = moments.yy;
 		// Calculate rotation required to align rotation axes
 		if (Double.compare(xmax, ymax) == 0) {
 			alpha = 0;
 			return;
 		}
-		final double moment = csmiValues[2];
+		final double moment = moments.xy;
 		final double vali1;
 		final double vali2;
 		alpha = Math.atan(2.0 * moment / (ymax - xmax)) / 2.0;
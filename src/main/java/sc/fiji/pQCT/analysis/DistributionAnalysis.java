@@ -29,13 +29,14 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package sc.fiji.pQCT.analysis;
 
 import static java.util.Arrays.stream;
-import static java.util.stream.IntStream.range;
 
 import java.util.List;
 import java.util.Vector;
 
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
+import sc.fiji.pQCT.selectroi.BoundingBox;
 import sc.fiji.pQCT.selectroi.SelectROI;
+import sc.fiji.pQCT.utils.PolarRayCaster;
 
 public class DistributionAnalysis {
 
@@ -90,9 +91,10 @@ public class DistributionAnalysis {
 		originalROI = roi.cortexROI.clone();
 		peeledROI = roi.cortexROI.clone();
 
-		// Test peeledROI min and max values
-		final int peeledSize = width * height;
-		peeledROI = erode(peeledROI, width, height, minimum);
+		// Everything outside the sieve is at the minimum in the cortex ROI
+		final BoundingBox bounds = threshold > minimum ? roi.getSieveMoments().bounds
+			: BoundingBox.of(width, height);
+		peeledROI = erode(peeledROI, width, height, minimum, bounds);
 
 		for (int i = 0; i < marrowI.size(); i++) {
 			marrowCenter[0] += (double) marrowI.get(i);
@@ -101,15 +103,15 @@ public class DistributionAnalysis {
 		marrowCenter[0] /= marrowI.size();
 		marrowCenter[1] /= marrowJ.size();
 
-		peeledBMD = range(0, peeledSize).filter(i -> peeledROI[i] >= threshold)
+		peeledBMD = bounds.indices(width).filter(i -> peeledROI[i] >= threshold)
 			.mapToDouble(ii -> peeledROI[ii]).average().orElse(0.0);
 
 		// Try old implementation here
 		final Vector<Integer> cortexI = new Vector<>();
 		final Vector<Integer> cortexJ = new Vector<>();
 		double maxRadiusY = 0;
-		for (int j = 0; j < height; j++) {
-			for (int i = 0; i < width; i++) {
+		for (int j = bounds.minY; j <= bounds.maxY; j++) {
+			for (int i = bounds.minX; i <= bounds.maxX; i++) {
 				if (peeledROI[i + j * width] >= threshold) {
 					if (Math.sqrt((i - marrowCenter[0]) * (i - marrowCenter[0]) + (j -
 						marrowCenter[1]) * (j - marrowCenter[1])) > maxRadiusY)
@@ -147,7 +149,7 @@ public class DistributionAnalysis {
 			}
 		}
 
-		maxRadius = range(0, peeledSize).filter(i -> originalROI[i] >= threshold)
+		maxRadius = bounds.indices(width).filter(i -> originalROI[i] >= threshold)
 			.mapToDouble(index -> {
 				int i = index % width;
 				int j = (index - i) / width;
@@ -173,72 +175,52 @@ public class DistributionAnalysis {
 		}
 		// Finding endocortical and pericortical borders uMath.sing polar
 		// coordinates
-		final double x = marrowCenter[0];
-		final double y = marrowCenter[1];
+		final PolarRayCaster caster = new PolarRayCaster(width, marrowCenter[0],
+			marrowCenter[1]);
 
 		for (int et = 0; et < 360; ++et) {
-			final Vector<Double> BMD_temp = new Vector<>();
-			theta[et] = Math.PI / 180.0 * et;
+			theta[et] = caster.getTheta(et);
 
 			if (et > 0) {
 				r[et] = Math.round((rS[et - 1] / 2.0) * 10.0) / 10.0;
 			}
 
 			// Anatomical endosteal border
-			final double sinTheta = Math.sin(theta[et]);
-			final double cosTheta = Math.cos(theta[et]);
-
-			r[et] = expandRadius(originalROI, threshold, r[et], x, y, cosTheta,
-				sinTheta);
+			r[et] = caster.expand(originalROI, threshold, et, r[et], maxRadius);
 			rS[et] = r[et];
 			if (preventPeeling) {
 				r2[et] = r[et];
 			}
 			else {
-				r[et] = expandRadius(peeledROI, 1.0, r[et], x, y, cosTheta, sinTheta);
+				r[et] = caster.expand(peeledROI, 1.0, et, r[et], maxRadius);
 				r2[et] = r[et];
 				r[et] = r[et] + 0.1;
 			}
 
 			// Return from rMax to identify periosteal border
-			double rTemp = maxRadius;
 			final double[] roiToObserve = preventPeeling ? originalROI : peeledROI;
-
-			while (rTemp > r2[et]) {
-				final int index = (int) (x + rTemp * cosTheta) + (((int) (y + rTemp *
-					sinTheta)) * width);
-				if (roiToObserve[index] > 0) {
-					// The loop went until no longer on bone
-					rTemp += 0.1;
-					break;
-				}
-				rTemp -= 0.1;
-			}
+			final double rTemp = caster.contract(roiToObserve, et, maxRadius,
+				r2[et]);
 
 			// Identify anatomical periosteal border
 			if (preventPeeling) {
 				rU[et] = rTemp;
 			}
 			else {
-				rU[et] = expandRadiusMulti(originalROI, threshold, rTemp, x, y,
-					cosTheta, sinTheta);
+				rU[et] = caster.expandWhileAhead(originalROI, threshold, et, rTemp,
+					maxRadius / pixelSpacing);
 			}
 
 			// Get BMD through the cortex by repeating the incrementing
-			while (r[et] < rTemp) {
-				r[et] = r[et] + 0.1;
-				final int index = (int) (x + r[et] * cosTheta) + (((int) (y + r[et] *
-					sinTheta)) * width);
-				if (roiToObserve[index] > 0) {
-					BMD_temp.add(originalROI[index]);
-				}
-			}
+			final int analysisThickness = caster.sampleMasked(roiToObserve,
+				originalROI, et, r[et], rTemp);
+			r[et] = caster.getEndRadius();
+			final double[] bMDTemp = caster.getSamples();
 
 			// Get the BMDs here
 
 			// Dividing the cortex to three divisions -> save the mean vBMD for each
 			// division
-			final double analysisThickness = BMD_temp.size();
 			if (analysisThickness < divisions) {
 				break;
 			}
@@ -248,7 +230,7 @@ public class DistributionAnalysis {
 					divisions); ka < (int) (analysisThickness * (div + 1.0) /
 						divisions); ka++)
 				{
-					bMDJ.get(div)[et] += BMD_temp.get(ka);
+					bMDJ.get(div)[et] += bMDTemp[ka];
 					mo++;
 				}
 				bMDJ.get(div)[et] /= mo;
@@ -261,12 +243,26 @@ public class DistributionAnalysis {
 	// repeating code
 	public static double[] erode(final double[] data, final int width,
 		final int height, final double bgVal)
+	{
+		return erode(data, width, height, bgVal, BoundingBox.of(width, height));
+	}
+
+	/**
+	 * Erodes the pixels within the box. All the pixels outside the box must
+	 * equal bgVal.
+	 */
+	public static double[] erode(final double[] data, final int width,
+		final int height, final double bgVal, final BoundingBox box)
 	{
 		// Erode algorithm
 		// Modified from the best dilate by one solution taken from
 		// http://ostermiller.org/dilate_and_erode.html
-		for (int i = 1; i < height - 1; i++) {
-			for (int j = 1; j < width - 1; j++) {
+		for (int i = Math.max(1, box.minY); i <= Math.min(height - 2,
+			box.maxY); i++)
+		{
+			for (int j = Math.max(1, box.minX); j <= Math.min(width - 2,
+				box.maxX); j++)
+			{
 				final int index = i * width + j;
 				if (data[index] > bgVal) {
 					if (data[(i - 1) * width + j] == bgVal || data[(i) * width + j -
@@ -279,23 +275,39 @@ public class DistributionAnalysis {
 				}
 			}
 		}
-		for (int i = 0; i < width * height; i++) {
-			if (data[i] < bgVal) {
-				data[i] = bgVal;
+		for (int i = box.minY; i <= box.maxY; i++) {
+			for (int j = i * width + box.minX; j <= i * width + box.maxX; j++) {
+				if (data[j] < bgVal) {
+					data[j] = bgVal;
+				}
 			}
 		}
 		return data;
 	}
-	
+
 	//Overload of the erode for byte array
 	public static byte[] erode(final byte[] data, final int width,
 		final int height, final byte bgVal)
+	{
+		return erode(data, width, height, bgVal, BoundingBox.of(width, height));
+	}
+
+	/**
+	 * Erodes the pixels within the box. All the pixels outside the box must
+	 * equal bgVal.
+	 */
+	public static byte[] erode(final byte[] data, final int width,
+		final int height, final byte bgVal, final BoundingBox box)
 	{
 		// Erode algorithm
 		// Modified from the best dilate by one solution taken from
 		// http://ostermiller.org/dilate_and_erode.html
-		for (int i = 1; i < height - 1; i++) {
-			for (int j = 1; j < width - 1; j++) {
+		for (int i = Math.max(1, box.minY); i <= Math.min(height - 2,
+			box.maxY); i++)
+		{
+			for (int j = Math.max(1, box.minX); j <= Math.min(width - 2,
+				box.maxX); j++)
+			{
 				final int index = i * width + j;
 				if (data[index] > bgVal) {
 					if (data[(i - 1) * width + j] == bgVal || data[(i) * width + j -
@@ -308,55 +320,15 @@ public class DistributionAnalysis {
 				}
 			}
 		}
-		for (int i = 0; i < width * height; i++) {
-			if (data[i] < bgVal) {
-				data[i] = bgVal;
+		for (int i = box.minY; i <= box.maxY; i++) {
+			for (int j = i * width + box.minX; j <= i * width + box.maxX; j++) {
+				if (data[j] < bgVal) {
+					data[j] = bgVal;
+				}
 			}
 		}
 		return data;
 	}
-	
-
-	// TODO Replace while(roi[x + r * cos(theta) ...]) loops with similar methods
-	private double expandRadius(final double[] roi, final double threshold,
-		final double radius, final double x, final double y, final double cos,
-		final double sin)
-	{
-		double expandedR = radius;
-		final double maxR = maxRadius;
-		while (true) {
-			final int index = (int) (x + expandedR * cos) + (((int) (y + expandedR *
-				sin)) * width);
-			if (roi[index] >= threshold || expandedR >= maxR) {
-				break;
-			}
-			expandedR += 0.1;
-		}
-		return expandedR;
-	}
-
-	// TODO Replace while(roi[x + r * cos(theta) ...] || roi[x + r + 2 *
-	// cos(theta) ...]) loops with similar methods
-	private double expandRadiusMulti(final double[] roi, final double threshold,
-		final double radius, final double x, final double y, final double cos,
-		final double sin)
-	{
-		double expandedR = radius;
-		final double maxR = maxRadius / pixelSpacing;
-		while (true) {
-			final double radii[] = { expandedR, expandedR + 0.5, expandedR + 1.0,
-				expandedR + 2.0, expandedR + 3.0, expandedR + 4.0, expandedR + 6.0 };
-			final int[] indices = stream(radii).mapToInt(r -> (int) ((x + r * cos) +
-				((int) (y + r * sin)) * width)).toArray();
-			if (stream(indices).noneMatch(i -> roi[i] > threshold) ||
-				expandedR >= maxR)
-			{
-				break;
-			}
-			expandedR += 0.1;
-		}
-		return expandedR;
-	}
 
 	// TODO Refactor into a static utility method for all classes instead of
 	// repeating code
@@ -32,6 +32,7 @@ import java.util.Vector;
 
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
 import sc.fiji.pQCT.selectroi.SelectROI;
+import sc.fiji.pQCT.utils.PolarImage;
 
 public class MassDistribution {
 
@@ -39,9 +40,9 @@ public class MassDistribution {
 	public final int width;
 	public final double[] bMCs;
 	private final double sectorWidth;
-	private final double[] boneCenter;
 	private final Vector<Integer> pind;
 	private final SelectROI roi;
+	private final PolarImage polarImage;
 	private final double[] bMC = new double[360];
 
 	public MassDistribution(final SelectROI roi,
@@ -52,19 +53,7 @@ public class MassDistribution {
 		sectorWidth = details.sectorWidth;
 		height = roi.height;
 		width = roi.width;
-		boneCenter = new double[2];
-		double points = 0;
-		for (int j = 0; j < height; j++) {
-			for (int i = 0; i < width; i++) {
-				if (roi.sieve[i + j * width] > 0) {
-					boneCenter[0] += i;
-					boneCenter[1] += j;
-					++points;
-				}
-			}
-		}
-		boneCenter[0] /= points;
-		boneCenter[1] /= points;
+		polarImage = roi.getSievePolarImage();
 		final int sectors = (int) (360 / sectorWidth);
 		bMCs = new double[sectors];
 		calculateDistribution();
@@ -74,41 +63,22 @@ public class MassDistribution {
 	private void calculateDistribution() {
 		// Calculate radii in polar coordinate system originating from bone marrow
 		// center of mass
-		final double rIncrement = 0.1;
+		final double rIncrement = polarImage.step;
 		// Finding endocortical and pericortical borders uMath.sing polar
 		// coordinates
 		for (int et = 0; et < 360; et++) {
-			final double theta = Math.PI / 180.0 * et;
 			bMC[et] = 0;
-			double R = 0;
-			while (roi.sieve[(int) (boneCenter[0] + R * Math.cos(theta)) +
-				((int) ((boneCenter[1] + R * Math.sin(theta))) * width)] > 0 ||
-				roi.sieve[(int) (boneCenter[0] + (R + 0.5) * Math.cos(theta)) +
-					((int) ((boneCenter[1] + (R + 0.5) * Math.sin(theta))) *
-						width)] > 0 || roi.sieve[(int) (boneCenter[0] + (R + 1) * Math.cos(
-							theta)) + ((int) ((boneCenter[1] + (R + 1) * Math.sin(theta))) *
-								width)] > 0 || roi.sieve[(int) (boneCenter[0] + (R + 2) * Math
-									.cos(theta)) + ((int) ((boneCenter[1] + (R + 2) * Math.sin(
-										theta))) * width)] > 0 || roi.sieve[(int) (boneCenter[0] +
-											(R + 3) * Math.cos(theta)) + ((int) ((boneCenter[1] + (R +
-												3) * Math.sin(theta))) * width)] > 0 ||
-				roi.sieve[(int) (boneCenter[0] + (R + 4) * Math.cos(theta)) +
-					((int) ((boneCenter[1] + (R + 4) * Math.sin(theta))) * width)] > 0 ||
-				roi.sieve[(int) (boneCenter[0] + (R + 6) * Math.cos(theta)) +
-					((int) ((boneCenter[1] + (R + 6) * Math.sin(theta))) * width)] > 0)
-			{
+			final int offset = et * polarImage.columns;
+			for (int s = 0; s < polarImage.lengths[et]; ++s) {
 				// Calculate bMC rho*dV, dV=dA*slice_thickness
 				// dA=pi*((r(et)*resolution)^2-((r(et)-0.1)*resolution)^2),
 				// slice_thickness = 1 mm (could be set to actual slice thickness, but
 				// makes no difference for comparisons -> 1 mm is used bMD divided by
 				// 1000, because unit is mg/cm3 and area is mm2
-				final double tempBMD = roi.scaledImage[(int) (boneCenter[0] + R * Math
-					.cos(theta)) + ((int) ((boneCenter[1] + R * Math.sin(theta))) *
-						width)];
-				bMC[et] += tempBMD / 1000.0 * Math.PI / 360.0 * ((R *
-					roi.pixelSpacing) * (R * roi.pixelSpacing) - ((R - rIncrement) *
+				final double R = polarImage.radii[s];
+				bMC[et] += polarImage.values[offset + s] / 1000.0 * Math.PI / 360.0 *
+					((R * roi.pixelSpacing) * (R * roi.pixelSpacing) - ((R - rIncrement) *
 						roi.pixelSpacing) * ((R - rIncrement) * roi.pixelSpacing));
-				R += rIncrement;
 			}
 		}
 	}
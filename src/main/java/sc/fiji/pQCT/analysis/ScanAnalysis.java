@@ -0,0 +1,284 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.analysis;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import ij.ImagePlus;
+import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
+import sc.fiji.pQCT.io.ScaledImageData;
+import sc.fiji.pQCT.selectroi.BitMask;
+import sc.fiji.pQCT.selectroi.ImageJRois;
+import sc.fiji.pQCT.selectroi.RoiSelector;
+import sc.fiji.pQCT.selectroi.SelectROI;
+import sc.fiji.pQCT.selectroi.SelectSoftROI;
+import sc.fiji.pQCT.selectroi.SelectSoftROILasso;
+
+/**
+ * Runs the segmentation and the analyses selected in the details for a single
+ * scan. Analyses that were not selected are left null. Shared by the ImageJ
+ * plugin and the headless batch analysis.
+ * <p>
+ * The given details are only read. The stacked and flip guesses made while
+ * segmenting are collected into {@link #details}, which belongs to this scan,
+ * so that scans can be analysed concurrently with the same details.
+ * </p>
+ */
+public class ScanAnalysis {
+
+	/** The details of the analysis with the guesses made for this scan */
+	public final ImageAndAnalysisDetails details;
+	public final RoiSelector roi;
+	public final RoiSelector softRoi;
+	public final DetermineAlpha determineAlpha;
+	public final SoftTissueAnalysis softTissueAnalysis;
+	public final CorticalAnalysis corticalAnalysis;
+	public final MassDistribution massDistribution;
+	public final ConcentricRingAnalysis concentricRingAnalysis;
+	public final DistributionAnalysis distributionAnalysis;
+
+	/**
+	 * Interactive constructor. Limits the segmentation to the ROI of the image
+	 * if details.manualRoi is set. If setRoi is true, flips the image like the
+	 * scaled image and outlines the selected bone on it.
+	 */
+	public ScanAnalysis(final ScaledImageData scaledImageData,
+		final ImageAndAnalysisDetails details, final ImagePlus imp,
+		final boolean setRoi) throws ExecutionException
+	{
+		this(scaledImageData, details, details.manualRoi ? ImageJRois
+			.getManualRoi(imp, scaledImageData.width, scaledImageData.height)
+			: null);
+		final boolean hadRoi = imp.getRoi() != null;
+		if (setRoi && roi instanceof SelectROI) {
+			ImageJRois.showSelection(imp, details, ((SelectROI) roi).edges.get(
+				roi.selection).contour);
+			if (details.stOn && !hadRoi) {
+				// The outline is not shown with the soft tissues
+				imp.setRoi(null, false);
+			}
+		}
+	}
+
+	/**
+	 * Analyses the scan without touching any image.
+	 *
+	 * @param manualRoi pixels the segmentation is limited to if
+	 *          details.manualRoi is set, or null.
+	 */
+	public ScanAnalysis(final ScaledImageData scaledImageData,
+		final ImageAndAnalysisDetails details, final BitMask manualRoi)
+		throws ExecutionException
+	{
+		final boolean boneOn = details.cOn || details.mOn || details.conOn ||
+			details.dOn;
+		// The stages started so far, waited for before a failure is rethrown
+		final List<CompletableFuture<?>> started = new ArrayList<>();
+		// The bone and the soft tissue segmentations are independent
+		final CompletableFuture<SelectROI> boneStage = boneOn ? async(started,
+			() -> new SelectROI(scaledImageData, details, manualRoi,
+				details.boneThreshold)) : completedFuture(null);
+		final CompletableFuture<RoiSelector> softStage;
+		if (!details.stOn) {
+			softStage = completedFuture(null);
+		}
+		else if (details.lassoOn) {
+			softStage = async(started, () -> new SelectSoftROILasso(scaledImageData,
+				details, manualRoi));
+		}
+		else {
+			softStage = async(started, () -> new SelectSoftROI(scaledImageData,
+				details, manualRoi));
+		}
+		final CompletableFuture<SoftTissueAnalysis> softTissueStage = track(
+			started, softStage.thenApplyAsync(soft -> soft == null ? null
+				: new SoftTissueAnalysis(soft)));
+		final SelectROI boneRoi = join(boneStage, started);
+		final ImageAndAnalysisDetails boneDetails = boneOn ? details.withGuesses(
+			boneRoi.stacked, boneRoi.flipDistribution) : details;
+		// The rotation threshold segmentation, used by the cortical analysis and
+		// for rotating to the other bone, is done once and passed to both. It
+		// guesses the flags once more, but only the other bone rotations use and
+		// report those guesses. The soft tissue guess only matters to it when the
+		// flip is guessed from the stacked guess, otherwise it can be segmented
+		// alongside the soft tissues.
+		final String[] rotationLabels = details.rotationLabels;
+		final boolean otherBone = details.rotationChoice.equals(rotationLabels[3]) ||
+			details.rotationChoice.equals(rotationLabels[4]);
+		final boolean thresholdOn = boneOn && (details.cOn || otherBone);
+		final boolean thresholdAfterSoft = details.stOn && details.guessStacked &&
+			details.guessFlip;
+		CompletableFuture<SelectROI> thresholdStage = null;
+		if (thresholdOn && !thresholdAfterSoft) {
+			thresholdStage = async(started, () -> boneRoi.getThresholdRoi(
+				details.rotationThreshold, boneDetails));
+		}
+		softRoi = join(softStage, started);
+		ImageAndAnalysisDetails scanDetails = boneDetails;
+		if (softRoi != null && details.guessStacked) {
+			scanDetails = scanDetails.withGuesses(softRoi.stacked,
+				scanDetails.flipDistribution);
+		}
+		roi = boneRoi != null ? boneRoi : softRoi;
+		if (roi == null) {
+			// No analysis was selected
+			this.details = scanDetails;
+			determineAlpha = null;
+			softTissueAnalysis = null;
+			corticalAnalysis = null;
+			massDistribution = null;
+			concentricRingAnalysis = null;
+			distributionAnalysis = null;
+			return;
+		}
+		SelectROI thresholdRoi = null;
+		if (thresholdOn) {
+			try {
+				thresholdRoi = thresholdStage != null ? join(thresholdStage) : boneRoi
+					.getThresholdRoi(details.rotationThreshold, scanDetails);
+				if (otherBone) {
+					scanDetails = scanDetails.withGuesses(thresholdRoi.stacked,
+						thresholdRoi.flipDistribution);
+				}
+			}
+			catch (final ExecutionException e) {
+				// The analyses leave out what needs the segmentation
+				e.printStackTrace();
+			}
+		}
+		this.details = scanDetails;
+		// The analyses only read the segmentations, so they run side by side
+		final SelectROI rotationRoi = thresholdRoi;
+		final CompletableFuture<CorticalAnalysis> corticalStage = details.cOn
+			? async(started, () -> new CorticalAnalysis(boneRoi, rotationRoi))
+			: completedFuture(null);
+		final CompletableFuture<DetermineAlpha> alphaStage;
+		if (boneOn) {
+			final ImageAndAnalysisDetails rotationDetails = scanDetails;
+			alphaStage = async(started, () -> new DetermineAlpha(boneRoi,
+				rotationDetails, rotationRoi));
+		}
+		else {
+			alphaStage = completedFuture(null);
+		}
+		final CompletableFuture<MassDistribution> massStage = details.mOn
+			? track(started, alphaStage.thenApplyAsync(
+				alpha -> new MassDistribution(boneRoi, details, alpha)))
+			: completedFuture(null);
+		final CompletableFuture<ConcentricRingAnalysis> concentricStage =
+			details.conOn ? track(started, alphaStage.thenApplyAsync(
+				alpha -> new ConcentricRingAnalysis(boneRoi, details, alpha)))
+				: completedFuture(null);
+		final CompletableFuture<DistributionAnalysis> distributionStage =
+			details.dOn ? track(started, alphaStage.thenApplyAsync(
+				alpha -> new DistributionAnalysis(boneRoi, details, alpha)))
+				: completedFuture(null);
+		// Joined in the order the analyses used to run in, so that the same
+		// failure is reported first
+		determineAlpha = join(alphaStage, started);
+		softTissueAnalysis = join(softTissueStage, started);
+		corticalAnalysis = join(corticalStage, started);
+		massDistribution = join(massStage, started);
+		concentricRingAnalysis = join(concentricStage, started);
+		distributionAnalysis = join(distributionStage, started);
+	}
+
+	/** A stage of the analysis that may fail to segment the scan */
+	private interface Stage<T> {
+
+		T get() throws ExecutionException;
+	}
+
+	/** Runs the stage on the common fork-join pool and adds it to started */
+	private static <T> CompletableFuture<T> async(
+		final List<CompletableFuture<?>> started, final Stage<T> stage)
+	{
+		return track(started, CompletableFuture.supplyAsync(() -> {
+			try {
+				return stage.get();
+			}
+			catch (final ExecutionException e) {
+				throw new CompletionException(e);
+			}
+		}));
+	}
+
+	private static <T> CompletableFuture<T> track(
+		final List<CompletableFuture<?>> started, final CompletableFuture<T> stage)
+	{
+		started.add(stage);
+		return stage;
+	}
+
+	/**
+	 * Waits for the stage. If it failed, waits for all the started stages to
+	 * finish, so that none is left running on the pool, and rethrows what the
+	 * stage threw. The failures of the other stages are not reported.
+	 */
+	private static <T> T join(final CompletableFuture<T> stage,
+		final List<CompletableFuture<?>> started) throws ExecutionException
+	{
+		try {
+			return join(stage);
+		}
+		catch (final ExecutionException | RuntimeException | Error e) {
+			CompletableFuture.allOf(started.toArray(new CompletableFuture<?>[0]))
+				.handle((result, failure) -> null).join();
+			throw e;
+		}
+	}
+
+	/** Waits for the stage and rethrows what it threw */
+	private static <T> T join(final CompletableFuture<T> stage)
+		throws ExecutionException
+	{
+		try {
+			return stage.join();
+		}
+		catch (final CompletionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof ExecutionException) {
+				throw (ExecutionException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -34,9 +34,9 @@ public class ImageAndAnalysisDetails {
 	public final boolean flipVertical;
 	public final boolean noFiltering;
 	public final boolean sleeveOn;
-	public boolean lassoOn;
-	public boolean trAnaOn;
-	public boolean grTrackOn;	//Use gradient tracking rather than threshold countour for object segmentation
+	public final boolean lassoOn;
+	public final boolean trAnaOn;
+	public final boolean grTrackOn;	//Use gradient tracking rather than threshold countour for object segmentation
 	public final double scalingFactor;
 	public final double constant;
 
@@ -80,8 +80,8 @@ public class ImageAndAnalysisDetails {
 	public final boolean guessStacked;
 	public final boolean invertGuess;
 	public final boolean saveImageOnDisk;
-	public boolean flipDistribution;
-	public boolean stacked;
+	public final boolean flipDistribution;
+	public final boolean stacked;
 
 	// ImageJ plugin constructor
 	public ImageAndAnalysisDetails(final boolean[] defaultTopValues,
@@ -145,4 +145,81 @@ public class ImageAndAnalysisDetails {
 		concentricSector = sectorsAndDivisions[2];
 		concentricDivisions = sectorsAndDivisions[3];
 	}
+
+	// Batch analysis constructor, copies the parameters with the given scaling
+	public ImageAndAnalysisDetails(final ImageAndAnalysisDetails other,
+		final double scalingFactor, final double constant)
+	{
+		this(other, scalingFactor, constant, other.stacked, other.flipDistribution);
+	}
+
+	private ImageAndAnalysisDetails(final ImageAndAnalysisDetails other,
+		final double scalingFactor, final double constant, final boolean stacked,
+		final boolean flipDistribution)
+	{
+		flipHorizontal = other.flipHorizontal;
+		flipVertical = other.flipVertical;
+		noFiltering = other.noFiltering;
+		sleeveOn = other.sleeveOn;
+		lassoOn = other.lassoOn;
+		trAnaOn = other.trAnaOn;
+		grTrackOn = other.grTrackOn;
+		this.scalingFactor = scalingFactor;
+		this.constant = constant;
+
+		peelingPercentage = other.peelingPercentage;
+		airThreshold = other.airThreshold;
+		fatThreshold = other.fatThreshold;
+		muscleThreshold = other.muscleThreshold;
+		edgeDivisions = other.edgeDivisions;
+		marrowThreshold = other.marrowThreshold;
+		softThreshold = other.softThreshold;
+		areaThreshold = other.areaThreshold;
+		rotationThreshold = other.rotationThreshold;
+		bMDThreshold = other.bMDThreshold;
+		boneThreshold = other.boneThreshold;
+
+		cOn = other.cOn;
+		mOn = other.mOn;
+		conOn = other.conOn;
+		dOn = other.dOn;
+		stOn = other.stOn;
+
+		sectorWidth = other.sectorWidth;
+		divisions = other.divisions;
+		concentricSector = other.concentricSector;
+		concentricDivisions = other.concentricDivisions;
+		roiChoice = other.roiChoice;
+		roiChoiceSt = other.roiChoiceSt;
+		rotationChoice = other.rotationChoice;
+		choiceLabels = other.choiceLabels;
+		rotationLabels = other.rotationLabels;
+		preventPeeling = other.preventPeeling;
+		allowCleaving = other.allowCleaving;
+		suppressImages = other.suppressImages;
+		manualRoi = other.manualRoi;
+		manualRotation = other.manualRotation;
+		manualAlpha = other.manualAlpha;
+		guessFlip = other.guessFlip;
+		guessLarger = other.guessLarger;
+		guessStacked = other.guessStacked;
+		invertGuess = other.invertGuess;
+		saveImageOnDisk = other.saveImageOnDisk;
+		this.flipDistribution = flipDistribution;
+		this.stacked = stacked;
+	}
+
+	/**
+	 * @return the parameters with stacked and flipDistribution replaced, e.g. by
+	 *         the values guessed from the segmentation of a scan.
+	 */
+	public ImageAndAnalysisDetails withGuesses(final boolean stacked,
+		final boolean flipDistribution)
+	{
+		if (stacked == this.stacked && flipDistribution == this.flipDistribution) {
+			return this;
+		}
+		return new ImageAndAnalysisDetails(this, scalingFactor, constant, stacked,
+			flipDistribution);
+	}
 }
@@ -33,6 +33,7 @@ import java.util.stream.IntStream;
 import sc.fiji.pQCT.selectroi.Coordinate;
 import java.util.ArrayList;
 import sc.fiji.pQCT.utils.ClusterPoints;
+import sc.fiji.pQCT.utils.MedianFilter;
 
 public class ScaledImageData {
 
@@ -136,29 +137,9 @@ public class ScaledImageData {
 	public double[] medianFilter(final double[] data, final int width,
 		final int height, final int filterSize)
 	{
-		// Fill filtered with min value to get the frame from messing up with edge
+		// Fill the frame with min value to get it from messing up with edge
 		// detection
-		final double[] filtered = new double[width * height];
-		Arrays.fill(filtered, minimum);
-		final double[] toMedian = new double[filterSize * filterSize];
-		final int noGo = (int) Math.floor(filterSize / 2.0);
-		final int median = (int) Math.floor(filterSize * filterSize / 2.0);
-		for (int row = noGo; row < height - noGo; row++) {
-			for (int col = noGo; col < width - noGo; col++) {
-				int newPixel = 0;
-				for (int rowOffset = -noGo; rowOffset <= noGo; rowOffset++) {
-					for (int colOffset = -noGo; colOffset <= noGo; colOffset++) {
-						final int rowTotal = row + rowOffset;
-						final int colTotal = col + colOffset;
-						toMedian[newPixel] = data[rowTotal * width + colTotal];
-						newPixel++;
-					}
-				}
-				Arrays.sort(toMedian);
-				filtered[row * width + col] = toMedian[median];
-			}
-		}
-		return filtered;
+		return MedianFilter.filter(data, width, height, filterSize, minimum);
 	}
 	
 	public double[] sobel(){
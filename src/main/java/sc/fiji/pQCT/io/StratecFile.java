@@ -0,0 +1,174 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped Stratec (I*.M*, C*.M*, S*.M*) file. The header fields are
+ * decoded from the mapping only when asked for, so reading e.g. the patient
+ * details touches only the first pages of the file, and the pixels are read
+ * in bulk from a ShortBuffer view of the image block.
+ */
+public class StratecFile {
+
+	public static final int HEADER_LENGTH = 1609;
+	private final ByteBuffer buffer;
+
+	public StratecFile(final File file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			final long bytes = channel.size();
+			if (bytes < HEADER_LENGTH) {
+				throw new IOException("File length < 1609 bytes.");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes).order(
+				ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	public double getVoxelSize() {
+		return buffer.getDouble(12);
+	}
+
+	public double getObjLen() {
+		return buffer.getDouble(318);
+	}
+
+	/** Measurement location in percent of the bone length, in C* files */
+	public double getPercent() {
+		return buffer.getDouble(334);
+	}
+
+	public String getMeasInfo() {
+		return getNByteString(662);
+	}
+
+	public long getMeasDate() {
+		return buffer.getInt(986);
+	}
+
+	public String getDevice() {
+		return getNByteString(1050);
+	}
+
+	public int getPatMeasNo() {
+		return buffer.getShort(1085);
+	}
+
+	public long getPatNo() {
+		return buffer.getInt(1087);
+	}
+
+	public long getPatBirth() {
+		return buffer.getInt(1091);
+	}
+
+	public String getPatName() {
+		return getNByteString(1099);
+	}
+
+	public String getPatID() {
+		return getNByteString(1282);
+	}
+
+	/** Measured site, in C* files */
+	public String getSite() {
+		return getNByteString(1316);
+	}
+
+	public int getPicX0() {
+		return buffer.getShort(1525);
+	}
+
+	public int getPicY0() {
+		return buffer.getShort(1527);
+	}
+
+	public int getPicMatrixX() {
+		return buffer.getShort(1529);
+	}
+
+	public int getPicMatrixY() {
+		return buffer.getShort(1531);
+	}
+
+	/**
+	 * Returns the raw pixel block following the header.
+	 *
+	 * @throws IOException if the file is too short for the image matrix.
+	 */
+	public ShortBuffer getPixelBuffer() throws IOException {
+		final int size = getPicMatrixX() * getPicMatrixY();
+		if (size < 0 || HEADER_LENGTH + 2L * size > buffer.capacity()) {
+			throw new IOException("File too short for a " + getPicMatrixX() + " x " +
+				getPicMatrixY() + " image.");
+		}
+		final ByteBuffer pixelBytes = buffer.duplicate().order(
+			ByteOrder.LITTLE_ENDIAN);
+		pixelBytes.position(HEADER_LENGTH);
+		final ShortBuffer pixelBuffer = pixelBytes.asShortBuffer();
+		pixelBuffer.limit(size);
+		return pixelBuffer;
+	}
+
+	/**
+	 * Reads the pixels into the given array, converted to the signed
+	 * representation used by the plugins.
+	 *
+	 * @param pixels array of at least PicMatrixX * PicMatrixY elements.
+	 * @throws IOException if the file is too short for the image matrix.
+	 */
+	public void readPixels(final short[] pixels) throws IOException {
+		final ShortBuffer pixelBuffer = getPixelBuffer();
+		final int size = pixelBuffer.remaining();
+		pixelBuffer.get(pixels, 0, size);
+		final int bitMask = 0x8000;
+		for (int i = 0; i < size; i++) {
+			final short pixel = pixels[i];
+			pixels[i] = (short) ((pixel >= 0 ? -bitMask : bitMask - 1) + pixel);
+		}
+	}
+
+	private String getNByteString(final int pos) {
+		final byte n = buffer.get(pos);
+		final byte[] bytes = new byte[n];
+		for (int i = 0; i < n; ++i) {
+			bytes[i] = buffer.get(pos + 1 + i);
+		}
+		return new String(bytes);
+	}
+}
@@ -0,0 +1,217 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * Scaling coefficients (XInter and XSlope) of the pQCT devices, read from the
+ * TYP files bundled in the typ resource directory and from any user supplied
+ * TYP directories. All the files are parsed once when the registry is created,
+ * and the registry is immutable afterwards so it can be shared by concurrent
+ * analyses.
+ * <p>
+ * The default registry also reads the directories listed in the system
+ * property {@value #TYP_PATH_PROPERTY}, separated by the platform path
+ * separator.
+ * </p>
+ */
+public class TypCalibration {
+
+	public static final String TYP_PATH_PROPERTY = "pqct.typ.path";
+	private static final String RESOURCE_DIRECTORY = "typ";
+	// Device (TYP file name) -> {XInter, XSlope}
+	private final Map<String, double[]> coefficients;
+
+	private static class DefaultHolder {
+
+		private static final TypCalibration INSTANCE = new TypCalibration(
+			propertyDirectories());
+	}
+
+	/**
+	 * Creates a registry of the bundled TYP files and the TYP files in the given
+	 * directories. A file in a directory overrides a bundled file or a file in a
+	 * preceding directory of the same name.
+	 */
+	public TypCalibration(final File... directories) {
+		final Map<String, double[]> map = new HashMap<>();
+		readBundled(map);
+		for (final File directory : directories) {
+			try {
+				readDirectory(directory.toPath(), map);
+			}
+			catch (final IOException e) {
+				System.err.println("Could not read TYP files from " + directory +
+					": " + e.getMessage());
+			}
+		}
+		coefficients = Collections.unmodifiableMap(map);
+	}
+
+	/** Returns the shared registry of the bundled and user TYP files */
+	public static TypCalibration getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * @return {XInter, XSlope} as written in the TYP file of the device, or null
+	 *         if there is no TYP file for it.
+	 */
+	public double[] getTypCoefficients(final String device) {
+		final double[] typCoefficients = device == null ? null : coefficients.get(
+			device);
+		return typCoefficients == null ? null : typCoefficients.clone();
+	}
+
+	/**
+	 * @return {intercept, slope} that scale the pixel values of the device to
+	 *         mg/cm3, or null if there is no TYP file for it.
+	 */
+	public double[] getScaling(final String device) {
+		final double[] scaling = getTypCoefficients(device);
+		if (scaling != null) {
+			scaling[1] /= 1000.0;
+		}
+		return scaling;
+	}
+
+	private static File[] propertyDirectories() {
+		final String path = System.getProperty(TYP_PATH_PROPERTY);
+		if (path == null || path.trim().isEmpty()) {
+			return new File[0];
+		}
+		final String[] names = path.split(File.pathSeparator);
+		final File[] directories = new File[names.length];
+		for (int i = 0; i < names.length; ++i) {
+			directories[i] = new File(names[i].trim());
+		}
+		return directories;
+	}
+
+	private static void readBundled(final Map<String, double[]> map) {
+		final URL url = TypCalibration.class.getClassLoader().getResource(
+			RESOURCE_DIRECTORY);
+		if (url == null) {
+			return;
+		}
+		try {
+			final URI uri = url.toURI();
+			if (!"jar".equals(uri.getScheme())) {
+				readDirectory(Paths.get(uri), map);
+				return;
+			}
+			FileSystem jar;
+			boolean opened = false;
+			try {
+				jar = FileSystems.newFileSystem(uri, Collections.emptyMap());
+				opened = true;
+			}
+			catch (final FileSystemAlreadyExistsException e) {
+				jar = FileSystems.getFileSystem(uri);
+			}
+			try {
+				readDirectory(jar.getPath(RESOURCE_DIRECTORY), map);
+			}
+			finally {
+				if (opened) {
+					jar.close();
+				}
+			}
+		}
+		catch (final IOException | URISyntaxException | RuntimeException e) {
+			System.err.println("Could not read the bundled TYP files: " + e
+				.toString());
+		}
+	}
+
+	private static void readDirectory(final Path directory,
+		final Map<String, double[]> map) throws IOException
+	{
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(
+			directory))
+		{
+			for (final Path file : files) {
+				final String name = file.getFileName().toString();
+				if (!Files.isRegularFile(file) || !name.toLowerCase().endsWith(
+					".typ"))
+				{
+					continue;
+				}
+				try {
+					map.put(name, parse(new String(Files.readAllBytes(file),
+						StandardCharsets.ISO_8859_1)));
+				}
+				catch (final IOException | RuntimeException e) {
+					System.err.println("Could not read TYP file " + file + ": " + e
+						.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the XInter and XSlope lines of a TYP file. A missing line gives an
+	 * intercept of 0 or a slope of 1000, i.e. no scaling.
+	 */
+	static double[] parse(final String typFile) {
+		final String[] searchFor = { "XInter", "XSlope" };
+		final double[] typCoefficients = { 0.0, 1000.0 };
+		final boolean[] found = new boolean[searchFor.length];
+		final StringTokenizer lines = new StringTokenizer(typFile, "\n");
+		while (lines.hasMoreTokens()) {
+			final String line = lines.nextToken();
+			for (int i = 0; i < searchFor.length; ++i) {
+				if (!found[i] && line.contains(searchFor[i])) {
+					final StringTokenizer tokens = new StringTokenizer(line, "=");
+					tokens.nextToken();
+					typCoefficients[i] = Double.valueOf(tokens.nextToken().trim());
+					found[i] = true;
+				}
+			}
+		}
+		return typCoefficients;
+	}
+}
@@ -0,0 +1,257 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+import java.util.Arrays;
+
+/**
+ * A binary mask with one bit per pixel, packed row by row into long words so
+ * that morphology and set operations process 64 pixels at a time. Bits past
+ * the width of a row are always clear.
+ */
+public class BitMask {
+
+	public final int width;
+	public final int height;
+	private final int wordsPerRow;
+	private final long[] words;
+	private final long lastWordMask;
+
+	public BitMask(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+		wordsPerRow = (width + 63) >>> 6;
+		words = new long[wordsPerRow * height];
+		lastWordMask = -1L >>> (wordsPerRow * 64 - width);
+	}
+
+	private BitMask(final BitMask other) {
+		width = other.width;
+		height = other.height;
+		wordsPerRow = other.wordsPerRow;
+		words = other.words.clone();
+		lastWordMask = other.lastWordMask;
+	}
+
+	/** @return a mask of the pixels with a value above zero */
+	public static BitMask of(final byte[] data, final int width,
+		final int height)
+	{
+		final BitMask mask = new BitMask(width, height);
+		for (int i = 0; i < data.length; ++i) {
+			if (data[i] > 0) {
+				mask.set(i);
+			}
+		}
+		return mask;
+	}
+
+	/** @return the plane of the pixels that have the given label */
+	public static BitMask ofLabel(final byte[] labels, final int width,
+		final int height, final byte label)
+	{
+		final BitMask mask = new BitMask(width, height);
+		for (int i = 0; i < labels.length; ++i) {
+			if (labels[i] == label) {
+				mask.set(i);
+			}
+		}
+		return mask;
+	}
+
+	public BitMask copy() {
+		return new BitMask(this);
+	}
+
+	public boolean get(final int index) {
+		final int x = index % width;
+		return (words[wordIndex(index)] & (1L << x)) != 0;
+	}
+
+	public void set(final int index) {
+		words[wordIndex(index)] |= 1L << (index % width);
+	}
+
+	public void clear(final int index) {
+		words[wordIndex(index)] &= ~(1L << (index % width));
+	}
+
+	/** @return the number of set pixels */
+	public int cardinality() {
+		int count = 0;
+		for (final long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the index of the first set pixel at or after fromIndex in row
+	 *         order, or -1 if there is none
+	 */
+	public int nextSetBit(final int fromIndex) {
+		if (fromIndex >= width * height) {
+			return -1;
+		}
+		int y = fromIndex / width;
+		int k = y * wordsPerRow + ((fromIndex % width) >>> 6);
+		long word = words[k] & (-1L << fromIndex % width);
+		while (true) {
+			if (word != 0) {
+				final int x = ((k - y * wordsPerRow) << 6) + Long
+					.numberOfTrailingZeros(word);
+				return y * width + x;
+			}
+			if (++k == words.length) {
+				return -1;
+			}
+			y = k / wordsPerRow;
+			word = words[k];
+		}
+	}
+
+	public BitMask and(final BitMask other) {
+		for (int k = 0; k < words.length; ++k) {
+			words[k] &= other.words[k];
+		}
+		return this;
+	}
+
+	public BitMask or(final BitMask other) {
+		for (int k = 0; k < words.length; ++k) {
+			words[k] |= other.words[k];
+		}
+		return this;
+	}
+
+	public BitMask andNot(final BitMask other) {
+		for (int k = 0; k < words.length; ++k) {
+			words[k] &= ~other.words[k];
+		}
+		return this;
+	}
+
+	/**
+	 * Erodes by one pixel in four-connectivity. Pixels on the border of the
+	 * image are kept, as in the byte array erosions.
+	 */
+	public BitMask erode() {
+		final long[] source = words.clone();
+		final long[] west = new long[wordsPerRow];
+		final long[] east = new long[wordsPerRow];
+		for (int y = 1; y < height - 1; ++y) {
+			final int row = y * wordsPerRow;
+			shift(source, row, west, east);
+			for (int w = 0; w < wordsPerRow; ++w) {
+				final int k = row + w;
+				words[k] = source[k] & source[k - wordsPerRow] & source[k +
+					wordsPerRow] & west[w] & east[w];
+			}
+			// The first and the last column are never eroded
+			words[row] |= source[row] & 1L;
+			final int last = (width - 1) >>> 6;
+			words[row + last] |= source[row + last] & (1L << ((width - 1) & 63));
+		}
+		return this;
+	}
+
+	/** Dilates by one pixel in four-connectivity */
+	public BitMask dilate() {
+		final long[] source = words.clone();
+		final long[] west = new long[wordsPerRow];
+		final long[] east = new long[wordsPerRow];
+		for (int y = 0; y < height; ++y) {
+			final int row = y * wordsPerRow;
+			shift(source, row, west, east);
+			for (int w = 0; w < wordsPerRow; ++w) {
+				final int k = row + w;
+				long word = source[k] | west[w] | east[w];
+				if (y > 0) {
+					word |= source[k - wordsPerRow];
+				}
+				if (y < height - 1) {
+					word |= source[k + wordsPerRow];
+				}
+				words[k] = word;
+			}
+			words[row + wordsPerRow - 1] &= lastWordMask;
+		}
+		return this;
+	}
+
+	/** Writes value into data for each set pixel */
+	public byte[] fill(final byte[] data, final byte value) {
+		for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+			data[i] = value;
+		}
+		return data;
+	}
+
+	/** @return the mask as a byte array with the given value on set pixels */
+	public byte[] toBytes(final byte value) {
+		return fill(new byte[width * height], value);
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof BitMask)) {
+			return false;
+		}
+		final BitMask other = (BitMask) o;
+		return width == other.width && height == other.height && Arrays.equals(
+			words, other.words);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(words);
+	}
+
+	private int wordIndex(final int index) {
+		return (index / width) * wordsPerRow + ((index % width) >>> 6);
+	}
+
+	// Fills west and east with the row as seen from the pixel to the left and
+	// to the right, i.e. bit x of west is pixel x - 1 of the row
+	private void shift(final long[] source, final int row, final long[] west,
+		final long[] east)
+	{
+		for (int w = 0; w < wordsPerRow; ++w) {
+			final long word = source[row + w];
+			west[w] = word << 1;
+			east[w] = word >>> 1;
+			if (w > 0) {
+				west[w] |= source[row + w - 1] >>> 63;
+			}
+			if (w < wordsPerRow - 1) {
+				east[w] |= source[row + w + 1] << 63;
+			}
+		}
+	}
+}
@@ -26,51 +26,51 @@ OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
 OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 */
 
-package sc.fiji.pQCT.selectroi.liveWireEngine;
+package sc.fiji.pQCT.selectroi;
+
+import java.util.stream.IntStream;
 
 /**
- * Store pixel nodes in a Priority Queue so that Dijkstra can run on O(n log n)
- * The interface Comparable is required so that the Java class PriorityQueue
- * could be used The code is licensed under GPL 3.0 or newer
+ * A rectangular window of an image, with inclusive limits, that mask
+ * operations and statistics can be restricted to when the mask covers only a
+ * part of the image.
  */
-class PixelNode implements Comparable<PixelNode> {
+public class BoundingBox {
 
-	private final int[] myIndex;
-	private final double myDistance;
-	private final int[] whereFrom;
+	public final int minX;
+	public final int minY;
+	public final int maxX;
+	public final int maxY;
 
-	/**
-	 * Constructor
-	 * 
-	 * @param index the index of the node
-	 * @param distance the cost to the node
-	 * @param whereFrom from which node we got to this node from
-	 */
-	PixelNode(final int[] index, final double distance, final int[] whereFrom) {
-		myIndex = index;
-		myDistance = distance;
-		this.whereFrom = whereFrom;
+	public BoundingBox(final int minX, final int minY, final int maxX,
+		final int maxY)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
 	}
 
-	@Override
-	public int compareTo(final PixelNode other) {
-		return Double.compare(myDistance, other.getDistance());
+	/** @return a box covering the whole image */
+	public static BoundingBox of(final int width, final int height) {
+		return new BoundingBox(0, 0, width - 1, height - 1);
 	}
 
-	@Override
-	public boolean equals(final Object o) {
-		return o instanceof PixelNode && compareTo((PixelNode) o) == 0;
+	public boolean isEmpty() {
+		return minX > maxX || minY > maxY;
 	}
 
-	double getDistance() {
-		return myDistance;
+	public int getWidth() {
+		return Math.max(0, maxX - minX + 1);
 	}
 
-	int[] getIndex() {
-		return myIndex;
+	public int getHeight() {
+		return Math.max(0, maxY - minY + 1);
 	}
 
-	int[] getWhereFrom() {
-		return whereFrom;
+	/** @return the image indices of the pixels in the box, row by row */
+	public IntStream indices(final int width) {
+		return IntStream.rangeClosed(minY, maxY).flatMap(j -> IntStream
+			.rangeClosed(j * width + minX, j * width + maxX));
 	}
 }
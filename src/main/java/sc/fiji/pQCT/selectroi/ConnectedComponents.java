@@ -0,0 +1,133 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+import java.util.Arrays;
+
+/**
+ * Two-pass union-find labelling of the 4-connected components of the pixels
+ * at or above a threshold. Sums the area and the coordinates of every
+ * component in the same sweep, which is what the limb centre needs.
+ */
+public class ConnectedComponents {
+
+	public final int width;
+	public final int height;
+	/** Component label of each pixel, 0 for pixels below the threshold */
+	public final int[] labels;
+	/** Number of components, labels run from 1 to count */
+	public final int count;
+	// Per component statistics, indexed by label
+	public final int[] area;
+	public final long[] sumI;
+	public final long[] sumJ;
+
+	public ConnectedComponents(final double[] image, final int width,
+		final int height, final double threshold)
+	{
+		this.width = width;
+		this.height = height;
+		labels = new int[width * height];
+		// First pass, provisional labels and their equivalences
+		int[] parent = new int[256];
+		int next = 1;
+		for (int j = 0; j < height; ++j) {
+			for (int i = 0; i < width; ++i) {
+				final int index = i + j * width;
+				if (image[index] < threshold) {
+					continue;
+				}
+				final int left = i > 0 ? labels[index - 1] : 0;
+				final int up = j > 0 ? labels[index - width] : 0;
+				if (left == 0 && up == 0) {
+					if (next == parent.length) {
+						parent = Arrays.copyOf(parent, parent.length * 2);
+					}
+					parent[next] = next;
+					labels[index] = next++;
+				}
+				else if (left == 0 || up == 0) {
+					labels[index] = left + up;
+				}
+				else {
+					labels[index] = left;
+					union(parent, left, up);
+				}
+			}
+		}
+		// Second pass, final consecutive labels
+		final int[] finalLabel = new int[next];
+		int components = 0;
+		for (int l = 1; l < next; ++l) {
+			final int root = find(parent, l);
+			if (root == l) {
+				finalLabel[l] = ++components;
+			}
+		}
+		for (int l = 1; l < next; ++l) {
+			finalLabel[l] = finalLabel[find(parent, l)];
+		}
+		count = components;
+		area = new int[count + 1];
+		sumI = new long[count + 1];
+		sumJ = new long[count + 1];
+		for (int j = 0; j < height; ++j) {
+			for (int i = 0; i < width; ++i) {
+				final int index = i + j * width;
+				if (labels[index] == 0) {
+					continue;
+				}
+				final int label = finalLabel[labels[index]];
+				labels[index] = label;
+				++area[label];
+				sumI[label] += i;
+				sumJ[label] += j;
+			}
+		}
+	}
+
+	private static int find(final int[] parent, int label) {
+		while (parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
+	}
+
+	private static void union(final int[] parent, final int a, final int b) {
+		final int rootA = find(parent, a);
+		final int rootB = find(parent, b);
+		if (rootA < rootB) {
+			parent[rootB] = rootA;
+		}
+		else if (rootB < rootA) {
+			parent[rootA] = rootB;
+		}
+	}
+}
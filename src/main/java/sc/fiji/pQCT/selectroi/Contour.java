@@ -0,0 +1,161 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of (i, j) pixel coordinates, i.e. a traced edge, backed by
+ * two primitive int arrays. Replaces the boxed Vector&lt;Integer&gt; pairs the
+ * edge tracing used to pass around.
+ */
+public class Contour {
+
+	private int[] iit; // x-coordinates
+	private int[] jiit; // y-coordinates
+	private int size;
+
+	public Contour() {
+		this(64);
+	}
+
+	public Contour(final int capacity) {
+		iit = new int[Math.max(1, capacity)];
+		jiit = new int[iit.length];
+	}
+
+	public Contour(final int[] iit, final int[] jiit) {
+		this(iit.length);
+		System.arraycopy(iit, 0, this.iit, 0, iit.length);
+		System.arraycopy(jiit, 0, this.jiit, 0, iit.length);
+		size = iit.length;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getI(final int index) {
+		checkIndex(index);
+		return iit[index];
+	}
+
+	public int getJ(final int index) {
+		checkIndex(index);
+		return jiit[index];
+	}
+
+	public int getLastI() {
+		return getI(size - 1);
+	}
+
+	public int getLastJ() {
+		return getJ(size - 1);
+	}
+
+	public void add(final int i, final int j) {
+		ensureCapacity(size + 1);
+		iit[size] = i;
+		jiit[size] = j;
+		++size;
+	}
+
+	/** Inserts the coordinates of other starting from index. */
+	public void insert(final int index, final Contour other) {
+		ensureCapacity(size + other.size);
+		System.arraycopy(iit, index, iit, index + other.size, size - index);
+		System.arraycopy(jiit, index, jiit, index + other.size, size - index);
+		System.arraycopy(other.iit, 0, iit, index, other.size);
+		System.arraycopy(other.jiit, 0, jiit, index, other.size);
+		size += other.size;
+	}
+
+	/** Removes the coordinates from index from (inclusive) to to (exclusive). */
+	public void remove(final int from, final int to) {
+		System.arraycopy(iit, to, iit, from, size - to);
+		System.arraycopy(jiit, to, jiit, from, size - to);
+		size -= to - from;
+	}
+
+	/**
+	 * @return a copy of the coordinates from index from (inclusive) to to
+	 *         (exclusive).
+	 */
+	public Contour subContour(final int from, final int to) {
+		final Contour sub = new Contour(to - from);
+		System.arraycopy(iit, from, sub.iit, 0, to - from);
+		System.arraycopy(jiit, from, sub.jiit, 0, to - from);
+		sub.size = to - from;
+		return sub;
+	}
+
+	public Contour copy() {
+		return subContour(0, size);
+	}
+
+	public void reverse() {
+		for (int a = 0, b = size - 1; a < b; ++a, --b) {
+			final int tempI = iit[a];
+			final int tempJ = jiit[a];
+			iit[a] = iit[b];
+			jiit[a] = jiit[b];
+			iit[b] = tempI;
+			jiit[b] = tempJ;
+		}
+	}
+
+	/** @return a copy of the x-coordinates, e.g. for a PolygonRoi. */
+	public int[] toIArray() {
+		return Arrays.copyOf(iit, size);
+	}
+
+	/** @return a copy of the y-coordinates, e.g. for a PolygonRoi. */
+	public int[] toJArray() {
+		return Arrays.copyOf(jiit, size);
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " +
+				size);
+		}
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity > iit.length) {
+			final int newLength = Math.max(capacity, iit.length * 2);
+			iit = Arrays.copyOf(iit, newLength);
+			jiit = Arrays.copyOf(jiit, newLength);
+		}
+	}
+}
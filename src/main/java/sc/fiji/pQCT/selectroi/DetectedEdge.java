@@ -28,21 +28,15 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package sc.fiji.pQCT.selectroi;
 
-import java.util.Vector;
-
 public class DetectedEdge implements Comparable<DetectedEdge> {
 
-	public final Vector<Integer> iit; // indices for x-coordinates
-	public final Vector<Integer> jiit; // indices for y-coordinates
+	public final Contour contour; // x- and y-coordinates of the edge
 	public final int area;
 	public final int length;
 
-	public DetectedEdge(final Vector<Integer> iit, final Vector<Integer> jiit,
-		final int area)
-	{
-		this.iit = iit;
-		this.jiit = jiit;
-		length = iit.size();
+	public DetectedEdge(final Contour contour, final int area) {
+		this.contour = contour;
+		length = contour.size();
 		this.area = area;
 	}
 
@@ -0,0 +1,104 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+import java.awt.Polygon;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
+
+/**
+ * Passes ROIs between an ImageJ image and the segmentation, which only works on
+ * arrays. Used by the interactive plugin, batch analysis needs neither.
+ */
+public final class ImageJRois {
+
+	private ImageJRois() {}
+
+	/**
+	 * @return the pixels inside the ROI of the image, and the points of its
+	 *         polygon, or null if the image has no ROI.
+	 */
+	public static BitMask getManualRoi(final ImagePlus imp, final int width,
+		final int height)
+	{
+		final Roi ijROI = imp.getRoi();
+		if (ijROI == null) {
+			return null;
+		}
+		final BitMask mask = new BitMask(width, height);
+		for (int j = 0; j < height; j++) {
+			for (int i = 0; i < width; i++) {
+				if (ijROI.contains(i, j)) {
+					mask.set(i + j * width);
+				}
+			}
+		}
+		final Polygon polygon = ijROI.getPolygon();
+		if (polygon != null) {
+			// Check whether a polygon can be acquired and include its points
+			for (int j = 0; j < polygon.npoints; j++) {
+				mask.set(polygon.xpoints[j] + polygon.ypoints[j] * width);
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Flips the image the way the scaled image was flipped and adds the contour
+	 * of the selected bone to it as a polygon ROI.
+	 */
+	public static void showSelection(final ImagePlus imp,
+		final ImageAndAnalysisDetails details, final Contour contour)
+	{
+		final int[] xcoordinates = contour.toIArray();
+		final int[] ycoordinates = contour.toJArray();
+		// Flip the original image prior to adding the ROI, if scaled image is
+		// flipped
+		if ((details.flipHorizontal || details.flipVertical) && imp
+			.getRoi() != null)
+		{
+			// Remove existing ROIs in order to flip the whole image...
+			IJ.run(imp, "Select None", "");
+		}
+		if (details.flipHorizontal) {
+			imp.getProcessor().flipVertical();
+			imp.updateAndDraw();
+		}
+		if (details.flipVertical) {
+			imp.getProcessor().flipHorizontal();
+			imp.updateAndDraw();
+		}
+		imp.setRoi(new PolygonRoi(xcoordinates, ycoordinates, contour.size(),
+			Roi.POLYGON));
+	}
+}
@@ -157,8 +157,10 @@ public class LiveWirePlugin implements PlugIn, MouseListener,
 		}
 		else {
 			// Visualize adding livewire segment
-			int[][] fromSeedToCursor;
-			while ((fromSeedToCursor = lwc.returnPath(x, y)) == null) {}
+			final int[][] fromSeedToCursor = waitForPath(x, y);
+			if (fromSeedToCursor == null) {
+				return;
+			}
 			pX = new int[polygon.npoints + fromSeedToCursor.length];
 			pY = new int[polygon.npoints + fromSeedToCursor.length];
 			for (int i = 0; i < polygon.npoints; ++i) {
@@ -232,8 +234,11 @@ public class LiveWirePlugin implements PlugIn, MouseListener,
 				}
 				else {
 					// Add a livewire segment
-					int[][] fromSeedToCursor;
-					while ((fromSeedToCursor = lwc.returnPath(x, y)) == null) {}
+					final int[][] fromSeedToCursor = waitForPath(x, y);
+					if (fromSeedToCursor == null) {
+						polygons.remove(polygons.size() - 1);
+						return;
+					}
 					final int[] pX = new int[polygon.npoints + fromSeedToCursor.length];
 					final int[] pY = new int[polygon.npoints + fromSeedToCursor.length];
 					for (int i = 0; i < polygon.npoints; ++i) {
@@ -258,6 +263,17 @@ public class LiveWirePlugin implements PlugIn, MouseListener,
 		}
 	}
 
+	// Blocks until the search from the current seed has reached x, y
+	private int[][] waitForPath(final int x, final int y) {
+		try {
+			return lwc.getPath(x, y);
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
 	@Override
 	public void mouseWheelMoved(final MouseWheelEvent e) {
 		final int rotation = e.getWheelRotation();
@@ -358,7 +374,12 @@ public class LiveWirePlugin implements PlugIn, MouseListener,
 				pixels[c][r] = tempPointer[c + r * width];
 			}
 		}
-		lwc = new LiveWireCosts(pixels);
+		if (lwc != null) {
+			lwc.cancel();
+		}
+		// The slice pixels identify the cached cost maps, which are rebuilt if
+		// the pixels have been edited in place since
+		lwc = new LiveWireCosts(pixels, tempPointer);
 		init();
 	}
 
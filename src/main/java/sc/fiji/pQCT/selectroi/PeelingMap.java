@@ -0,0 +1,183 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+/**
+ * City block distance of every sieve pixel to the background, i.e. the number
+ * of 4-connected erosions (see
+ * {@link sc.fiji.pQCT.analysis.DistributionAnalysis#erode(byte[], int, int, byte)})
+ * that remove the pixel. Pixels on the border of the image are never eroded.
+ * Computed with one breadth first pass from the background, after which
+ * peeling to any percentage is a lookup in the histogram of the distances.
+ */
+public class PeelingMap {
+
+	/** Distance of pixels that erosion never removes */
+	public static final int NEVER = Integer.MAX_VALUE;
+
+	private final int width;
+	private final BoundingBox bounds;
+	// Distances within the bounds, 0 for the background
+	private final int[] distances;
+	// Number of pixels at each distance, index 0 unused
+	private final int[] histogram;
+	private final int area;
+
+	/**
+	 * @param sieve pixels with a value greater than zero belong to the sieve
+	 * @param bounds a box holding every pixel of the sieve
+	 */
+	public PeelingMap(final byte[] sieve, final int width, final int height,
+		final BoundingBox bounds)
+	{
+		this.width = width;
+		this.bounds = bounds;
+		final int boxWidth = bounds.getWidth();
+		final int boxHeight = bounds.getHeight();
+		distances = new int[boxWidth * boxHeight];
+		// Breadth first from the pixels next to the background, which the first
+		// erosion removes
+		final int[] queue = new int[distances.length];
+		int head = 0;
+		int tail = 0;
+		int count = 0;
+		for (int y = 0; y < boxHeight; ++y) {
+			final int j = y + bounds.minY;
+			for (int x = 0; x < boxWidth; ++x) {
+				final int i = x + bounds.minX;
+				if (sieve[j * width + i] <= 0) {
+					continue;
+				}
+				++count;
+				final int p = y * boxWidth + x;
+				distances[p] = NEVER;
+				if (i == 0 || j == 0 || i == width - 1 || j == height - 1) {
+					continue;
+				}
+				final int index = j * width + i;
+				if (sieve[index - width] <= 0 || sieve[index + width] <= 0 ||
+					sieve[index - 1] <= 0 || sieve[index + 1] <= 0)
+				{
+					queue[tail++] = p;
+				}
+			}
+		}
+		for (int q = 0; q < tail; ++q) {
+			distances[queue[q]] = 1;
+		}
+		int maxDistance = tail > 0 ? 1 : 0;
+		while (head < tail) {
+			final int p = queue[head++];
+			final int x = p % boxWidth;
+			final int y = p / boxWidth;
+			final int next = distances[p] + 1;
+			tail = visit(x, y - 1, next, queue, tail, height);
+			tail = visit(x, y + 1, next, queue, tail, height);
+			tail = visit(x - 1, y, next, queue, tail, height);
+			tail = visit(x + 1, y, next, queue, tail, height);
+			maxDistance = Math.max(maxDistance, distances[p]);
+		}
+		area = count;
+		histogram = new int[maxDistance + 1];
+		for (final int distance : distances) {
+			if (distance > 0 && distance != NEVER) {
+				++histogram[distance];
+			}
+		}
+	}
+
+	/** @return the number of sieve pixels */
+	public int getArea() {
+		return area;
+	}
+
+	/** @return the number of pixels left after the given number of erosions */
+	public int getRemaining(final int erosions) {
+		int remaining = area;
+		for (int d = 1; d <= Math.min(erosions, histogram.length - 1); ++d) {
+			remaining -= histogram[d];
+		}
+		return remaining;
+	}
+
+	/**
+	 * @return the smallest number of erosions that leaves at most (100 -
+	 *         percentage) % of the sieve, or the number that removes every pixel
+	 *         that can be removed if that is not enough
+	 */
+	public int getErosions(final double percentage) {
+		final double target = area * ((100d - percentage) / 100d);
+		int remaining = area;
+		int erosions = 0;
+		while (remaining > target && erosions < histogram.length - 1) {
+			++erosions;
+			remaining -= histogram[erosions];
+		}
+		return erosions;
+	}
+
+	/**
+	 * @return a copy of the sieve without the pixels that the given number of
+	 *         erosions removes
+	 */
+	public byte[] peel(final byte[] sieve, final int erosions) {
+		final byte[] peeled = new byte[sieve.length];
+		final int boxWidth = bounds.getWidth();
+		for (int y = 0; y < bounds.getHeight(); ++y) {
+			final int offset = (y + bounds.minY) * width + bounds.minX;
+			for (int x = 0; x < boxWidth; ++x) {
+				if (distances[y * boxWidth + x] > erosions) {
+					peeled[offset + x] = sieve[offset + x];
+				}
+			}
+		}
+		return peeled;
+	}
+
+	// Queues a sieve pixel not reached yet, unless it is on the image border
+	private int visit(final int x, final int y, final int distance,
+		final int[] queue, final int tail, final int height)
+	{
+		final int boxWidth = bounds.getWidth();
+		if (x < 0 || y < 0 || x >= boxWidth || y >= bounds.getHeight()) {
+			return tail;
+		}
+		final int p = y * boxWidth + x;
+		final int i = x + bounds.minX;
+		final int j = y + bounds.minY;
+		if (distances[p] != NEVER || i == 0 || j == 0 || i == width - 1 ||
+			j == height - 1)
+		{
+			return tail;
+		}
+		distances[p] = distance;
+		queue[tail] = p;
+		return tail + 1;
+	}
+}
@@ -39,7 +39,6 @@ import java.util.Vector;
 import java.util.concurrent.ExecutionException;
 
 import ij.IJ;
-import ij.ImagePlus;
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
 import sc.fiji.pQCT.io.ScaledImageData;
 
@@ -63,7 +62,8 @@ public abstract class RoiSelector {
 	// For cortical bMD analyses
 	public final double BMDthreshold;
 	public final ScaledImageData scaledImageData;
-	public final ImagePlus imp;
+	// Pixels of the manually selected ROI, null if there is none
+	public final BitMask manualRoi;
 	final double airThreshold;
 	final double fatThreshold;
 	final double muscleThreshold;
@@ -89,12 +89,15 @@ public abstract class RoiSelector {
 	public byte[] softSieve;
 	// Will contain filled bones
 	byte[] result;
+	// Guessed by getSieve when asked to, otherwise as given in the details
+	public boolean stacked;
+	public boolean flipDistribution;
 
 	RoiSelector(final ScaledImageData dataIn,
-		final ImageAndAnalysisDetails detailsIn, final ImagePlus imp)
+		final ImageAndAnalysisDetails detailsIn, final BitMask manualRoi)
 	{
 		scaledImageData = dataIn;
-		this.imp = imp;
+		this.manualRoi = manualRoi;
 		details = detailsIn;
 		scaledImage = dataIn.scaledImage.clone();
 		softScaledImage = dataIn.softScaledImage.clone();
@@ -111,70 +114,50 @@ public abstract class RoiSelector {
 		// Thresholding soft tissues + marrow from bone
 		softThreshold = details.softThreshold;
 		minimum = dataIn.minimum;
+		stacked = details.stacked;
+		flipDistribution = details.flipDistribution;
 	}
 
-	public byte[] fillSieve(final Vector<Integer> roiI,
-		final Vector<Integer> roiJ, final int width, final int height,
-		final double[] scaledImage, final double threshold)
-	{
-
-		final int[][] fourconnectedNHood = { { -1, 0 }, { 1, 0 }, { 0, -1 }, { 0,
-			1 } };
+	// Sets the pixels outside the manually selected ROI to minimum, if the
+	// analysis is limited to it
+	void limitToManualRoi(final double[] image) {
+		if (manualRoi == null || !details.manualRoi) {
+			return;
+		}
+		for (int i = 0; i < image.length; ++i) {
+			if (!manualRoi.get(i)) {
+				image[i] = minimum;
+			}
+		}
+	}
 
-		// Fill the area enclosed by the traced edge contained in roiI,roiJ
+	public byte[] fillSieve(final Contour roi, final int width,
+		final int height, final double[] scaledImage, final double threshold)
+	{
+		// Fill the area enclosed by the traced edge contained in roi
 		// beginning needs to be within the traced edge
-		byte[] sieveTemp = new byte[width * height];
-		int x;
-		int y;
-		for (int z = 0; z < roiI.size(); ++z) {
-			sieveTemp[roiI.get(z) + roiJ.get(z) * width] = 1;
+		final byte[] sieveTemp = new byte[width * height];
+		for (int z = 0; z < roi.size(); ++z) {
+			sieveTemp[roi.getI(z) + roi.getJ(z) * width] = 1;
 		}
 
 		// Determine the flood fill init
+		final ScanlineFill scanlineFill = new ScanlineFill(width, height);
 		int[] tempCoordinates;
 		while (true) {
-			tempCoordinates = findFillInit(sieveTemp, roiI, roiJ, scaledImage,
-				threshold);
+			tempCoordinates = findFillInit(sieveTemp, roi, scaledImage, threshold);
 			if (tempCoordinates == null) {
 				return sieveTemp;
 			}
-			x = tempCoordinates[0];
-			y = tempCoordinates[1];
-
-			final Vector<Integer> initialX = new Vector<>();
-			final Vector<Integer> initialY = new Vector<>();
-			initialX.add(x);
-			initialY.add(y);
-			sieveTemp[x + y * width] = 1;
-			final byte[] sieveTemp2 = sieveTemp.clone();
-			boolean noLeak = true;
-			while (!initialX.isEmpty()) {
-
-				x = initialX.remove(initialX.size() - 1);
-				y = initialY.remove(initialY.size() - 1);
-
-				final int index = x + y * width;
-				if (sieveTemp2[index] == 0) {
-					sieveTemp2[index] = 1;
-				}
-				if (x < 1 || x >= width - 1 || y < 1 || y >= height - 1) {
-					noLeak = false;
-					break;
-				}
-				// Check 4-connected neighbours
-				for (final int[] aFourconnectedNHood : fourconnectedNHood) {
-					if (sieveTemp2[x + aFourconnectedNHood[0] + (y +
-						aFourconnectedNHood[1]) * width] == 0)
-					{
-						initialX.add(x + aFourconnectedNHood[0]);
-						initialY.add(y + aFourconnectedNHood[1]);
-					}
-
-				}
-
+			final int x = tempCoordinates[0];
+			final int y = tempCoordinates[1];
+			if (scanlineFill.fill(sieveTemp, x, y) < 0) {
+				// Leaked out of the edge, keep only the init pixel
+				scanlineFill.undo(sieveTemp);
+				sieveTemp[x + y * width] = 1;
 			}
-			if (noLeak) {
-				sieveTemp = sieveTemp2.clone();
+			else {
+				scanlineFill.commit();
 			}
 		}
 	}
@@ -215,27 +198,37 @@ public abstract class RoiSelector {
 				bones.get(i)[j] = 0;
 			}
 		}
-		// Find the centre of area of the limb
+		// Find the centre of area of the limb, i.e. of the seed pixel and the
+		// 4-connected components of fat or denser pixels touching it
 		final int maxIndice = selectRoiBiggestBoneDetectedEdges(edges);
-		final byte[] limbSieve = new byte[tempScaledImage.length];
-		limbSieve[edges.get(maxIndice).iit.get(0) + edges.get(maxIndice).jiit.get(
-			0) * width] = 1;
-		// Dilate muscleSieve, into neighbouring fat pixels
-		int tempDil = 1;
-		while (tempDil > 0) {
-			tempDil = dilateLimb(limbSieve, (byte) 1, (byte) 0, (byte) 4,
-				fatThreshold, tempScaledImage);
-		}
+		final Contour maxContour = edges.get(maxIndice).contour;
+		final int seedI = maxContour.getI(0);
+		final int seedJ = maxContour.getJ(0);
+		final ConnectedComponents limb = new ConnectedComponents(tempScaledImage,
+			width, height, fatThreshold);
+		final int seed = seedI + seedJ * width;
+		final int[] touching = { limb.labels[seed], seedJ > 0 ? limb.labels[seed -
+			width] : 0, seedI > 0 ? limb.labels[seed - 1] : 0, seedI + 1 < width
+				? limb.labels[seed + 1] : 0, seedJ + 1 < height ? limb.labels[seed +
+					width] : 0 };
 		double limbCenterX = 0.0;
 		double limbCenterY = 0.0;
 		double limbPoints = 0.0;
-		for (int j = 0; j < height; ++j) {
-			for (int i = 0; i < width; ++i) {
-				if (limbSieve[i + j * width] == (byte) 1) {
-					limbCenterX += i;
-					limbCenterY += j;
-					limbPoints += 1;
-				}
+		if (touching[0] == 0) {
+			limbCenterX += seedI;
+			limbCenterY += seedJ;
+			limbPoints += 1;
+		}
+		for (int i = 0; i < touching.length; ++i) {
+			final int label = touching[i];
+			boolean counted = label == 0;
+			for (int k = 0; k < i && !counted; ++k) {
+				counted = touching[k] == label;
+			}
+			if (!counted) {
+				limbCenterX += limb.sumI[label];
+				limbCenterY += limb.sumJ[label];
+				limbPoints += limb.area[label];
 			}
 		}
 		limbCenterX /= limbPoints;
@@ -243,9 +236,10 @@ public abstract class RoiSelector {
 		// Find the centres of circumference of the bones
 		final double[] distanceFromCentreOfLimb = new double[edges.size()];
 		for (int i = 0; i < edges.size(); ++i) {
-			for (int j = 0; j < edges.get(i).iit.size(); j++) {
-				bones.get(i)[0] += edges.get(i).iit.get(j);
-				bones.get(i)[1] += edges.get(i).jiit.get(j);
+			final Contour contour = edges.get(i).contour;
+			for (int j = 0; j < contour.size(); j++) {
+				bones.get(i)[0] += contour.getI(j);
+				bones.get(i)[1] += contour.getJ(j);
 				bones.get(i)[2] += 1;
 			}
 			bones.get(i)[0] /= bones.get(i)[2];
@@ -257,63 +251,45 @@ public abstract class RoiSelector {
 		return distanceFromCentreOfLimb;
 	}
 
-	// Remove the extra part from vectors and replace with a straight line
-	private Vector<Vector<Integer>> cleave(final byte[] result,
-		final Vector<Integer> fatRoiI, final Vector<Integer> fatRoiJ,
+	// Remove the extra part from the contour and replace with a straight line
+	private Contour cleave(final byte[] result, final Contour fatRoi,
 		final int[] cleavingIndices)
 	{
-		final int initI = fatRoiI.get(cleavingIndices[0]);
-		final int initJ = fatRoiJ.get(cleavingIndices[0]);
-		final int targetI = fatRoiI.get(cleavingIndices[1]);
-		final int targetJ = fatRoiJ.get(cleavingIndices[1]);
-		// remove cleaved elements
-		int replacementI = fatRoiI.get(cleavingIndices[0]);
-		int replacementJ = fatRoiJ.get(cleavingIndices[0]);
+		final int initI = fatRoi.getI(cleavingIndices[0]);
+		final int initJ = fatRoi.getJ(cleavingIndices[0]);
+		final int targetI = fatRoi.getI(cleavingIndices[1]);
+		final int targetJ = fatRoi.getJ(cleavingIndices[1]);
+		int replacementI = initI;
+		int replacementJ = initJ;
 		// the elements to be cleaved
-		final List<Integer> cleavedI = new Vector<>(fatRoiI.subList(
-			cleavingIndices[0] + 1, cleavingIndices[1] + 1));
-		final List<Integer> cleavedJ = new Vector<>(fatRoiJ.subList(
-			cleavingIndices[0] + 1, cleavingIndices[1] + 1));
-		for (int i = cleavingIndices[0]; i < cleavingIndices[1]; ++i) {
-			// Remove the elements to be cleaved
-			fatRoiI.removeElementAt(cleavingIndices[0]);
-			fatRoiJ.removeElementAt(cleavingIndices[0]);
-		}
+		final Contour cleaved = fatRoi.subContour(cleavingIndices[0] + 1,
+			cleavingIndices[1] + 1);
+		// Remove the elements to be cleaved
+		fatRoi.remove(cleavingIndices[0], cleavingIndices[1]);
 		// Insert replacement line
 		final double replacementLength = cleavingIndices[1] - cleavingIndices[0];
 		final double repILength = targetI - initI;
 		final double repJLength = targetJ - initJ;
 		double relativeLength;
-		final Vector<Integer> insertionI = new Vector<>();
-		final Vector<Integer> insertionJ = new Vector<>();
-		insertionI.add(replacementI);
-		insertionJ.add(replacementJ);
+		final Contour insertion = new Contour();
+		insertion.add(replacementI, replacementJ);
 		for (int k = cleavingIndices[0]; k < cleavingIndices[1]; ++k) {
 			relativeLength = k - cleavingIndices[0];
 			replacementI = ((int) (repILength * (relativeLength /
 				replacementLength))) + initI;
 			replacementJ = ((int) (repJLength * (relativeLength /
 				replacementLength))) + initJ;
-			if (replacementI != insertionI.lastElement() || replacementJ != insertionJ
-				.lastElement())
+			if (replacementI != insertion.getLastI() || replacementJ != insertion
+				.getLastJ())
 			{
-				insertionI.add(replacementI);
-				insertionJ.add(replacementJ);
+				insertion.add(replacementI, replacementJ);
 				result[replacementI + replacementJ * width] = 1;
 			}
 		}
-		fatRoiI.addAll(cleavingIndices[0], insertionI);
-		fatRoiJ.addAll(cleavingIndices[0], insertionJ);
-		Collections.reverse(insertionI);
-		Collections.reverse(insertionJ);
-		cleavedI.addAll(0, insertionI);
-		cleavedJ.addAll(0, insertionJ);
-		final Vector<Vector<Integer>> returnVectorPair = new Vector<>();
-		returnVectorPair.add(new Vector<>());
-		returnVectorPair.add(new Vector<>());
-		returnVectorPair.get(0).addAll(cleavedI);
-		returnVectorPair.get(1).addAll(cleavedJ);
-		return returnVectorPair;
+		fatRoi.insert(cleavingIndices[0], insertion);
+		insertion.reverse();
+		cleaved.insert(0, insertion);
+		return cleaved;
 	}
 
 	/*Cleaving is made by looking at the ratios of
@@ -323,143 +299,100 @@ public abstract class RoiSelector {
 	line and the edge with higher indices will be removed. E.g.
 	for a circle, the maximum ratio is (pi/2)/d ~= 1.57 and for square
 	it is 2/sqrt(2) = sqrt(2) ~= 1.41.*/
-	private Vector<Vector<Vector<Integer>>> cleaveEdge(final byte[] result,
-		final Vector<Integer> fatRoiI, final Vector<Integer> fatRoiJ,
+	private List<Contour> cleaveEdge(final byte[] result, final Contour fatRoi,
 		final double minRatio, final double minLength)
 	{
-		double distanceAlongTheEdge;
-		double distance;
-		double ratio;
-		final double minEdge = fatRoiI.size() / minLength;
+		final double minEdge = fatRoi.size() / minLength;
 		final int[] cleavingIndices = new int[2];
-		final Vector<Vector<Vector<Integer>>> returnVectorVectorPointer =
-			new Vector<>();
-		while (true) {
-			double highestRatio = minRatio - 0.1;
-			/*Go through all point pairs*/
-			for (int i = 0; i < fatRoiI.size() - 11; ++i) {
-				for (int j = i + 10; j < fatRoiI.size(); ++j) {
-					distance = Math.sqrt(Math.pow(fatRoiI.get(j) - fatRoiI.get(i), 2.0) +
-						Math.pow(fatRoiJ.get(j) - fatRoiJ.get(i), 2.0));
-					distanceAlongTheEdge = Math.min((j - i), fatRoiI.size() - j + i);
-					ratio = distanceAlongTheEdge / distance;
-					if (ratio > highestRatio && distanceAlongTheEdge > minEdge) {
-						highestRatio = ratio;
-						cleavingIndices[0] = i;
-						cleavingIndices[1] = j;
-					}
-
-				}
-			}
-			/*If ratio is high enough, cleave at the highest ratio point pair*/
-			if (highestRatio < minRatio) {
-				break;
-			}
-			returnVectorVectorPointer.add(cleave(result, fatRoiI, fatRoiJ,
-				cleavingIndices));
+		final List<Contour> contours = new ArrayList<>();
+		/*If ratio is high enough, cleave at the highest ratio point pair*/
+		while (findHighestRatio(fatRoi, minRatio - 0.1, minEdge,
+			cleavingIndices) >= minRatio)
+		{
+			contours.add(cleave(result, fatRoi, cleavingIndices));
 		}
 		/*Insert the last retained part to first index.*/
-		final Vector<Vector<Integer>> returnVectorPair = new Vector<>();
-		returnVectorPair.add(new Vector<>());
-		returnVectorPair.add(new Vector<>());
-		returnVectorPair.get(0).addAll(fatRoiI);
-		returnVectorPair.get(1).addAll(fatRoiJ);
-		if (returnVectorVectorPointer.size() < 1) {
-			returnVectorVectorPointer.add(returnVectorPair);
-		}
-		else {
-			returnVectorVectorPointer.insertElementAt(returnVectorPair, 0);
-		}
-		return returnVectorVectorPointer;
+		contours.add(0, fatRoi.copy());
+		return contours;
 	}
 
-	private int dilateLimb(final byte[] data, final byte dilateVal,
-		final byte min, final byte temp, final double threshold,
-		final double[] scaledImage)
+	/*Find the point pair, at least 10 points apart, with the highest ratio
+	above highestRatio. Gives the same pair as going through all point pairs,
+	but skips pairs that cannot beat the highest ratio found so far: moving the
+	second point s steps along the edge adds at most s to the distance along
+	the edge and takes at most s times the longest step of the edge from the
+	distance, so the ratio stays below highestRatio while
+	e + s <= highestRatio * (d - s * maxStep).*/
+	static double findHighestRatio(final Contour edge, double highestRatio,
+		final double minEdge, final int[] cleavingIndices)
 	{
-		// Dilate algorithm
-		// Best dilate by one solution taken from
-		// http://ostermiller.org/dilate_and_erode.html
-		int dilated = 0;
-		for (int i = 0; i < height; i++) {
-			for (int j = 0; j < width; j++) {
-				if (data[i * width + j] == dilateVal) {
-					if (i > 0 && data[(i - 1) * width + j] == min && scaledImage[(i - 1) *
-						width + j] >= threshold)
-					{
-						data[(i - 1) * width + j] = temp;
-					}
-					if (j > 0 && data[(i) * width + j - 1] == min && scaledImage[(i) *
-						width + j - 1] >= threshold)
-					{
-						data[(i) * width + j - 1] = temp;
-					}
-					if (i + 1 < height && data[(i + 1) * width + j] == min &&
-						scaledImage[(i + 1) * width + j] >= threshold)
-					{
-						data[(i + 1) * width + j] = temp;
-					}
-					if (j + 1 < width && data[(i) * width + j + 1] == min &&
-						scaledImage[(i) * width + j + 1] >= threshold)
-					{
-						data[(i) * width + j + 1] = temp;
-					}
-				}
-			}
+		final int size = edge.size();
+		double maxStep = 0.0;
+		for (int k = 0; k < size - 1; ++k) {
+			final int di = edge.getI(k + 1) - edge.getI(k);
+			final int dj = edge.getJ(k + 1) - edge.getJ(k);
+			maxStep = Math.max(maxStep, Math.sqrt(di * di + dj * dj));
 		}
-		for (int i = 0; i < width * height; i++) {
-			if (data[i] == temp) {
-				// Set to proper value here...
-				data[i] = dilateVal;
-				++dilated;
+		for (int i = 0; i < size - 11; ++i) {
+			final int pointI = edge.getI(i);
+			final int pointJ = edge.getJ(i);
+			int j = i + 10;
+			while (j < size) {
+				final int di = edge.getI(j) - pointI;
+				final int dj = edge.getJ(j) - pointJ;
+				final double distance = Math.sqrt(di * di + dj * dj);
+				final double distanceAlongTheEdge = Math.min((j - i), size - j + i);
+				final double ratio = distanceAlongTheEdge / distance;
+				if (ratio > highestRatio && distanceAlongTheEdge > minEdge) {
+					highestRatio = ratio;
+					cleavingIndices[0] = i;
+					cleavingIndices[1] = j;
+				}
+				// One step short of the bound to stay clear of rounding
+				final double skip = (highestRatio * distance - distanceAlongTheEdge) /
+					(1.0 + highestRatio * maxStep);
+				j += skip >= 2.0 ? (int) skip : 1;
 			}
 		}
-		return dilated;
+		return highestRatio;
 	}
 
-	// DetectedEdge version
-	private Vector<Object> fillResultEdge(byte[] result,
-		final Vector<Integer> iit, final Vector<Integer> jiit,
-		final double[] scaledImage, final double threshold)
+	// DetectedEdge version, null if the fill leaked out of the edge
+	private DetectedEdge fillResultEdge(final byte[] result,
+		final Contour contour, final double[] scaledImage, final double threshold,
+		final ScanlineFill scanlineFill)
 	{
-		if (iit.isEmpty()) {
+		if (contour.isEmpty()) {
 			return null;
 		}
-		Vector<Object> results = null;
 		int pixelsFilled = 0;
 		// Set initial fill pixel to the first pixel above threshold not on the
 		// border
-		boolean possible = true;
-		final byte[] tempResult = result.clone();
-		int[] tempCoordinates = findFillInit(tempResult, iit, jiit, scaledImage,
+		int[] tempCoordinates = findFillInit(result, contour, scaledImage,
 			threshold);
-		while (possible && tempCoordinates != null) {
-			final Vector<Object> returned = resultFill(tempCoordinates[0],
-				tempCoordinates[1], tempResult);
-			possible = (Boolean) returned.get(0);
-			pixelsFilled += (Integer) returned.get(1);
-			tempCoordinates = findFillInit(tempResult, iit, jiit, scaledImage,
-				threshold);
-		}
-		if (possible) {
-			results = new Vector<>();
-			result = tempResult;
-			results.add(result);
-			results.add(iit);
-			results.add(jiit);
-			results.add(pixelsFilled);
+		while (tempCoordinates != null) {
+			final int filled = scanlineFill.fill(result, tempCoordinates[0],
+				tempCoordinates[1]);
+			if (filled < 0) {
+				scanlineFill.undo(result);
+				return null;
+			}
+			pixelsFilled += filled;
+			tempCoordinates = findFillInit(result, contour, scaledImage, threshold);
 		}
-		return results;
+		scanlineFill.commit();
+		return new DetectedEdge(contour, pixelsFilled);
 	}
 
 	//Call without gradient tracking option
-	private Vector<Object> findEdge(final double[] scaledImage,
+	private Vector<DetectedEdge> findEdge(final double[] scaledImage,
 		final double threshold, final boolean allowCleaving){
 		return findEdge(scaledImage,threshold, allowCleaving, false);	
 	}
 
 	// DetectEdge
-	private Vector<Object> findEdge(final double[] scaledImage,
+	// Traced edges are filled into result
+	private Vector<DetectedEdge> findEdge(final double[] scaledImage,
 		final double threshold, final boolean allowCleaving, final boolean grTrack)
 	{
 		
@@ -468,8 +401,9 @@ public abstract class RoiSelector {
 		int j = 0;
 		int tempI;
 		int tempJ;
-		byte[] result = new byte[scaledImage.length];
-		final Collection<DetectedEdge> edges = new Vector<>();
+		final byte[] result = new byte[scaledImage.length];
+		final Vector<DetectedEdge> edges = new Vector<>();
+		final ScanlineFill scanlineFill = new ScanlineFill(width, height);
 		while ((i < (width - 1)) && (j < (height - 1))) {
 			while (j < height - 1 && i < width && scaledImage[i + j *
 				width] < threshold)
@@ -500,51 +434,31 @@ public abstract class RoiSelector {
 			result[i + j * width] = 1;
 
 			// Tracing algorithm 
-			Vector<Object> returned = null;
+			final Contour contour;
 			if (!grTrack){
-				returned = traceEdge(scaledImage, result, threshold, i, j); //Contour tracing
+				contour = traceEdge(scaledImage, result, threshold, i, j); //Contour tracing
 			}else{
-				returned = traceGradient(scaledImage, result, threshold, i, j); //Contour tracing		
+				contour = traceGradient(scaledImage, result, threshold, i, j); //Contour tracing		
 			}
-			result = (byte[]) returned.get(0);
-			final Vector<Integer> newIit = (Vector<Integer>) returned.get(1);
-			final Vector<Integer> newJiit = (Vector<Integer>) returned.get(2);
 			// Tracing algorithm done...
 
 			if (allowCleaving) {
-				final Vector<Vector<Vector<Integer>>> returnedVectors = cleaveEdge(
-					result, newIit, newJiit, 3.0, 6.0);
-				for (final Vector<Vector<Integer>> returnedVector : returnedVectors) {
+				final List<Contour> contours = cleaveEdge(result, contour, 3.0, 6.0);
+				for (final Contour cleaved : contours) {
 					// Fill edge within result..
-					final Vector<Integer> iit = new Vector<>();
-					final Vector<Integer> jiit = new Vector<>();
-					for (int ii = 0; ii < returnedVector.get(0).size(); ++ii) {
-						iit.add(returnedVector.get(0).get(ii));
-						jiit.add(returnedVector.get(1).get(ii));
-					}
-					final Vector<Object> results = fillResultEdge(result, iit, jiit,
-						scaledImage, threshold);
-					if (results != null) {
-						result = (byte[]) results.get(0);
-						edges.add(new DetectedEdge((Vector<Integer>) results.get(1),
-							(Vector<Integer>) results.get(2), (Integer) results.get(3)));
+					final DetectedEdge edge = fillResultEdge(result, cleaved,
+						scaledImage, threshold, scanlineFill);
+					if (edge != null) {
+						edges.add(edge);
 					}
 				}
 			}
 			else {
 				// Fill edge within result..
-				final Vector<Integer> iit = new Vector<>();
-				final Vector<Integer> jiit = new Vector<>();
-				for (int ii = 0; ii < newIit.size(); ++ii) {
-					iit.add(newIit.get(ii));
-					jiit.add(newJiit.get(ii));
-				}
-				final Vector<Object> results = fillResultEdge(result, iit, jiit,
-					scaledImage, threshold);
-				if (results != null) {
-					result = (byte[]) results.get(0);
-					edges.add(new DetectedEdge((Vector<Integer>) results.get(1),
-						(Vector<Integer>) results.get(2), (Integer) results.get(3)));
+				final DetectedEdge edge = fillResultEdge(result, contour, scaledImage,
+					threshold, scanlineFill);
+				if (edge != null) {
+					edges.add(edge);
 				}
 			}
 			// Find next empty spot
@@ -559,24 +473,21 @@ public abstract class RoiSelector {
 			}
 		}
 
-		final Vector<Object> returnVector = new Vector<>();
-		returnVector.add(result);
-		returnVector.add(edges);
-		return returnVector;
+		this.result = result;
+		return edges;
 	}
 
 	// DetectedEdge. Find fill init by steering clockwise from next to previous
-	private int[] findFillInit(final byte[] result, final Vector<Integer> iit,
-		final Vector<Integer> jiit, final double[] scaledImage,
-		final double threshold)
+	private int[] findFillInit(final byte[] result, final Contour contour,
+		final double[] scaledImage, final double threshold)
 	{
 		final int[] returnCoordinates = new int[2];
 		final int[] steer = new int[2];
-		for (int j = 0; j < iit.size() - 1; ++j) {
-			returnCoordinates[0] = iit.get(j);
-			returnCoordinates[1] = jiit.get(j);
-			double direction = Math.atan2(jiit.get(j + 1) - returnCoordinates[1], iit
-				.get(j + 1) - returnCoordinates[0]);
+		for (int j = 0; j < contour.size() - 1; ++j) {
+			returnCoordinates[0] = contour.getI(j);
+			returnCoordinates[1] = contour.getJ(j);
+			double direction = Math.atan2(contour.getJ(j + 1) - returnCoordinates[1],
+				contour.getI(j + 1) - returnCoordinates[0]);
 			for (int i = 0; i < 8; ++i) {
 				direction += Math.PI / 4.0;
 				steer[0] = (int) Math.round(Math.cos(direction));
@@ -632,12 +543,12 @@ public abstract class RoiSelector {
 				++counter[1];
 			}
 			if (stacked) {
-				returnValue = edges.get(counter[0]).jiit.get(0) >= edges.get(
-					counter[1]).jiit.get(0);
+				returnValue = edges.get(counter[0]).contour.getJ(0) >= edges.get(
+					counter[1]).contour.getJ(0);
 			}
 			else {
-				returnValue = edges.get(counter[0]).iit.get(0) >= edges.get(
-					counter[1]).iit.get(0);
+				returnValue = edges.get(counter[0]).contour.getI(0) >= edges.get(
+					counter[1]).contour.getI(0);
 			}
 		}
 		return returnValue;
@@ -660,64 +571,19 @@ public abstract class RoiSelector {
 		final DetectedEdge first = edges.get(considered[0]);
 		final DetectedEdge second = edges.get(considered[1]);
 		if (stacked) {
-			selectionCoord = edges.get(selection).jiit.get(0);
-			possibleCoords = new int[] { first.jiit.get(0), second.jiit.get(0) };
+			selectionCoord = edges.get(selection).contour.getJ(0);
+			possibleCoords = new int[] { first.contour.getJ(0), second.contour.getJ(
+				0) };
 		}
 		else {
-			selectionCoord = edges.get(selection).iit.get(0);
-			possibleCoords = new int[] { first.iit.get(0), second.iit.get(0) };
+			selectionCoord = edges.get(selection).contour.getI(0);
+			possibleCoords = new int[] { first.contour.getI(0), second.contour.getI(
+				0) };
 		}
 		return (selection == considered[0] && selectionCoord > possibleCoords[1]) ||
 			(selection == considered[1] && selectionCoord > possibleCoords[0]);
 	}
 
-	private Vector<Object> resultFill(int i, int j, final byte[] tempResult) {
-		final Vector<Integer> initialI = new Vector<>();
-		final Vector<Integer> initialJ = new Vector<>();
-		initialI.add(i);
-		initialJ.add(j);
-		int pixelsFilled = 0;
-		while (!initialI.isEmpty() && initialI.lastElement() > 0 && initialI
-			.lastElement() < width - 1 && initialJ.lastElement() > 0 && initialJ
-				.lastElement() < height - 1)
-		{
-			i = initialI.lastElement();
-			j = initialJ.lastElement();
-			initialI.remove(initialI.size() - 1);
-			initialJ.remove(initialJ.size() - 1);
-
-			if (tempResult[i + j * width] == 0) {
-				tempResult[i + j * width] = 1;
-				++pixelsFilled;
-			}
-
-			if (tempResult[i - 1 + j * width] == 0) {
-				initialI.add(i - 1);
-				initialJ.add(j);
-			}
-
-			if (tempResult[i + 1 + j * width] == 0) {
-				initialI.add(i + 1);
-				initialJ.add(j);
-			}
-
-			if (tempResult[i + (j - 1) * width] == 0) {
-				initialI.add(i);
-				initialJ.add(j - 1);
-			}
-
-			if (tempResult[i + (j + 1) * width] == 0) {
-				initialI.add(i);
-				initialJ.add(j + 1);
-			}
-
-		}
-		final Vector<Object> returnValue = new Vector<>();
-		returnValue.add(initialI.isEmpty() && initialJ.isEmpty());
-		returnValue.add(pixelsFilled);
-		return returnValue;
-	}
-
 	// DetectedEdge
 	private static int selectRoiBiggestBoneDetectedEdges(
 		final List<DetectedEdge> edges)
@@ -759,7 +625,7 @@ public abstract class RoiSelector {
 	private static int selectRoiFirstNthFromLeft(
 		final Collection<DetectedEdge> edges, final int nth)
 	{
-		final List<Integer> indices = edges.stream().map(e -> e.iit.get(0)).collect(
+		final List<Integer> indices = edges.stream().map(e -> e.contour.getI(0)).collect(
 			toList());
 		final Integer nthLeast = indices.stream().sorted().skip(nth).findFirst()
 			.orElse(-1);
@@ -770,7 +636,7 @@ public abstract class RoiSelector {
 	private static int selectRoiFirstNthFromTop(
 		final Collection<DetectedEdge> edges, final int nth)
 	{
-		final List<Integer> indices = edges.stream().map(e -> e.jiit.get(0))
+		final List<Integer> indices = edges.stream().map(e -> e.contour.getJ(0))
 			.collect(toList());
 		final Integer nthLeast = indices.stream().sorted().skip(nth).findFirst()
 			.orElse(-1);
@@ -868,7 +734,7 @@ public abstract class RoiSelector {
 		@i = column
 		@j = row
 	*/
-	private Vector<Object> traceGradient(final double[] scaledImage,
+	private Contour traceGradient(final double[] scaledImage,
 		final byte[] result, final double threshold, int i, int j)
 	{
 		double[] sobel = ScaledImageData.sobel(scaledImage,width,height);	//Get the gradient image for tracing
@@ -882,10 +748,8 @@ public abstract class RoiSelector {
 		}
 		*/
 		
-		final Collection<Integer> iit = new Vector<>();
-		final Collection<Integer> jiit = new Vector<>();
-		iit.add(i);
-		jiit.add(j);
+		final Contour contour = new Contour();
+		contour.add(i, j);
 		// begin by advancing right. Positive angles rotate the direction clockwise.
 		double direction = 0;
 		final int initI;
@@ -961,11 +825,7 @@ public abstract class RoiSelector {
 						result[ii] = 1;
 					}
 				}
-				final Vector<Object> returnVector = new Vector<>();
-				returnVector.add(result);
-				returnVector.add(iit);
-				returnVector.add(jiit);
-				return returnVector;
+				return contour;
 			}
 			else {
 				if (result[i + j * width] == 0) {
@@ -974,8 +834,7 @@ public abstract class RoiSelector {
 				else if (result[i + j * width] != 1) {
 					result[i + j * width]++;
 				}
-				iit.add(i);
-				jiit.add(j);
+				contour.add(i, j);
 
 			}
 		}
@@ -1002,13 +861,11 @@ public abstract class RoiSelector {
 	Idea taken from http://www.math.ucla.edu/~bertozzi/RTG/zhong07/report_zhong.pdf
 	The paper traced continent edges on map/satellite image
 	*/
-	private Vector<Object> traceEdge(final double[] scaledImage,
+	Contour traceEdge(final double[] scaledImage,
 		final byte[] result, final double threshold, int i, int j)
 	{
-		final Collection<Integer> iit = new Vector<>();
-		final Collection<Integer> jiit = new Vector<>();
-		iit.add(i);
-		jiit.add(j);
+		final Contour contour = new Contour();
+		contour.add(i, j);
 		// begin by advancing right. Positive angles rotate the direction clockwise.
 		double direction = 0;
 		double previousDirection;
@@ -1074,11 +931,7 @@ public abstract class RoiSelector {
 						result[ii] = 1;
 					}
 				}
-				final Vector<Object> returnVector = new Vector<>();
-				returnVector.add(result);
-				returnVector.add(iit);
-				returnVector.add(jiit);
-				return returnVector;
+				return contour;
 			}
 			else {
 				if (result[i + j * width] == 0) {
@@ -1087,8 +940,7 @@ public abstract class RoiSelector {
 				else if (result[i + j * width] != 1) {
 					result[i + j * width]++;
 				}
-				iit.add(i);
-				jiit.add(j);
+				contour.add(i, j);
 
 			}
 			// Keep steering counter clockwise not to miss single pixel structs...
@@ -1125,34 +977,11 @@ public abstract class RoiSelector {
 	byte[] dilate(final byte[] data, final byte dilateVal, final byte min,
 		final byte temp)
 	{
-		// Dilate algorithm
-		// Best dilate by one solution taken from
-		// http://ostermiller.org/dilate_and_erode.html
-		for (int i = 0; i < height; i++) {
-			for (int j = 0; j < width; j++) {
-				if (data[i * width + j] == dilateVal) {
-					if (i > 0 && data[(i - 1) * width + j] == min) {
-						data[(i - 1) * width + j] = temp;
-					}
-					if (j > 0 && data[(i) * width + j - 1] == min) {
-						data[i * width + j - 1] = temp;
-					}
-					if (i + 1 < height && data[(i + 1) * width + j] == min) {
-						data[(i + 1) * width + j] = temp;
-					}
-					if (j + 1 < width && data[i * width + j + 1] == min) {
-						data[i * width + j + 1] = temp;
-					}
-				}
-			}
-		}
-		for (int i = 0; i < data.length; i++) {
-			if (data[i] == temp) {
-				// Set to proper value here...
-				data[i] = dilateVal;
-			}
-		}
-		return data;
+		// Grow the dilateVal pixels by one into the neighbouring min pixels
+		final BitMask grown = BitMask.ofLabel(data, width, height, dilateVal)
+			.dilate().and(BitMask.ofLabel(data, width, height, min));
+		grown.or(BitMask.ofLabel(data, width, height, temp));
+		return grown.fill(data, dilateVal);
 	}
 
 	/*A function to get rid of the measurement tube used at UKK-institute
@@ -1223,29 +1052,13 @@ public abstract class RoiSelector {
 	}
 
 	byte[] erode(final byte[] data) {
-		// Erode algorithm
-		// Modified from the best dilate by one solution taken from
-		// http://ostermiller.org/dilate_and_erode.html
-		for (int i = 1; i < height - 1; i++) {
-			for (int j = 1; j < width - 1; j++) {
-				if (data[i * width + j] > 0) {
-					if (data[(i - 1) * width + j] == 0 || data[i * width + j - 1] == 0 ||
-						data[(i + 1) * width + j] == 0 || data[i * width + j + 1] == 0)
-					{
-						// Erode the pixel if any of the neighborhood pixels is background
-						data[i * width + j] = -1;
-					}
-				}
-			}
-		}
-		for (int i = 0; i < data.length; i++) {
-			data[i] = (byte) Math.max(0, data[i]);
-		}
-		return data;
+		// Erode the pixels that have any background pixel in their neighbourhood
+		final BitMask mask = BitMask.of(data, width, height);
+		return mask.andNot(mask.copy().erode()).fill(data, (byte) 0);
 	}
 
 		// DetectedEdges
-	Vector<Object> getSieve(final double[] tempScaledImage,
+	SieveResult getSieve(final double[] tempScaledImage,
 		final double boneThreshold, final String roiChoice,
 		final boolean guessStacked, final boolean stacked, final boolean guessFlip,
 		final boolean allowCleaving) throws ExecutionException{
@@ -1254,17 +1067,14 @@ public abstract class RoiSelector {
 
 
 	// DetectedEdges
-	Vector<Object> getSieve(final double[] tempScaledImage,
+	SieveResult getSieve(final double[] tempScaledImage,
 		final double boneThreshold,final boolean grTrack, final String roiChoice,
 		final boolean guessStacked, final boolean stacked, final boolean guessFlip,
 		final boolean allowCleaving) throws ExecutionException
 	{
 		// Trace bone edges
-		Vector<?> results = findEdge(tempScaledImage, boneThreshold,allowCleaving,grTrack);	//Object tracing
-		
-		result = (byte[]) results.get(0);
-		@SuppressWarnings("unchecked")
-		final List<DetectedEdge> edges = (Vector<DetectedEdge>) results.get(1);
+		final Vector<DetectedEdge> edges = findEdge(tempScaledImage, boneThreshold,
+			allowCleaving, grTrack); // Object tracing, fills result
 		if (edges.size() < 1) {
 			final double minValue = Arrays.stream(tempScaledImage).min().orElse(0);
 			final double maxValue = Arrays.stream(tempScaledImage).max().orElse(0);
@@ -1334,34 +1144,33 @@ public abstract class RoiSelector {
 			final int[] guessingStack = twoLargestBonesDetectedEdges(edges);
 			final DetectedEdge edge = edges.get(guessingStack[0]);
 			final DetectedEdge edge2 = edges.get(guessingStack[1]);
-			final double stackedThreshold = 1.1 * Math.abs(edge.iit.get(0) - edge2.iit
-				.get(1));
-			details.stacked = Math.abs(edge.jiit.get(0) - edge2.jiit.get(
-				1)) > stackedThreshold;
+			// The guess compares the first point of the largest edge to the second
+			// point of the other one. A one pixel edge has no second point, so the
+			// given flag is kept.
+			if (edge2.contour.size() > 1) {
+				final double stackedThreshold = 1.1 * Math.abs(edge.contour.getI(0) -
+					edge2.contour.getI(1));
+				this.stacked = Math.abs(edge.contour.getJ(0) - edge2.contour.getJ(
+					1)) > stackedThreshold;
+			}
 		}
 
 		// Try to guess whether to flip the distribution
 		if (guessFlip) {
 			if (details.guessLarger) {
-				details.flipDistribution = guessFlipLarger(edges, stacked);
+				flipDistribution = guessFlipLarger(edges, stacked);
 			}
 			else {
-				details.flipDistribution = guessFlipSelection(edges, selection,
-					stacked);
+				flipDistribution = guessFlipSelection(edges, selection, stacked);
 			}
 			// Flip flip, if roiChoice is smaller or second largest
 			if (details.invertGuess) {
-				details.flipDistribution = !details.flipDistribution;
+				flipDistribution = !flipDistribution;
 			}
 		}
 
-		final byte[] tempSieve = fillSieve(edges.get(selection).iit, edges.get(
-			selection).jiit, width, height, tempScaledImage, boneThreshold);
-		final Vector<Object> returnVector = new Vector<>();
-		returnVector.add(tempSieve);
-		returnVector.add(result);
-		returnVector.add(edges);
-		returnVector.add(selection);
-		return returnVector;
+		final byte[] tempSieve = fillSieve(edges.get(selection).contour, width,
+			height, tempScaledImage, boneThreshold);
+		return new SieveResult(tempSieve, result, edges, selection);
 	}
 }
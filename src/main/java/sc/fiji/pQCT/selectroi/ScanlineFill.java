@@ -0,0 +1,139 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+import java.util.Arrays;
+
+/**
+ * Scanline flood fill of 4-connected regions of zero pixels in a mask. Fills
+ * whole horizontal spans at a time, keeps its seed stack in a primitive array
+ * that is reused between fills, and records the filled spans so that a fill
+ * that leaked to the image border can be undone without copying the mask.
+ */
+public class ScanlineFill {
+
+	private final int width;
+	private final int height;
+	private int[] stack = new int[256];
+	private int stackSize;
+	// Filled spans as (first index, last index) pairs
+	private int[] spans = new int[768];
+	private int spansSize;
+
+	public ScanlineFill(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Sets the 4-connected region of zero pixels containing (i, j) to 1. The
+	 * filled spans are recorded until {@link #commit()} or
+	 * {@link #undo(byte[])} is called.
+	 *
+	 * @return the number of pixels filled, or -1 if the region reaches the
+	 *         border of the image, in which case the fill is left incomplete.
+	 */
+	public int fill(final byte[] mask, final int i, final int j) {
+		int filled = 0;
+		stackSize = 0;
+		push(i + j * width);
+		while (stackSize > 0) {
+			final int index = stack[--stackSize];
+			if (mask[index] != 0) {
+				continue;
+			}
+			final int y = index / width;
+			if (y < 1 || y >= height - 1) {
+				return -1;
+			}
+			final int rowStart = y * width;
+			int left = index;
+			while (left > rowStart && mask[left - 1] == 0) {
+				--left;
+			}
+			int right = index;
+			while (right < rowStart + width - 1 && mask[right + 1] == 0) {
+				++right;
+			}
+			if (left == rowStart || right == rowStart + width - 1) {
+				return -1;
+			}
+			Arrays.fill(mask, left, right + 1, (byte) 1);
+			recordSpan(left, right);
+			filled += right - left + 1;
+			pushRuns(mask, left - width, right - width);
+			pushRuns(mask, left + width, right + width);
+		}
+		return filled;
+	}
+
+	/** Forgets the recorded spans, keeping the fills. */
+	public void commit() {
+		spansSize = 0;
+	}
+
+	/** Resets the pixels filled since the last commit back to zero. */
+	public void undo(final byte[] mask) {
+		for (int s = 0; s < spansSize; s += 2) {
+			Arrays.fill(mask, spans[s], spans[s + 1] + 1, (byte) 0);
+		}
+		spansSize = 0;
+	}
+
+	// Push the first pixel of each run of zeros between from and to
+	private void pushRuns(final byte[] mask, final int from, final int to) {
+		boolean inRun = false;
+		for (int index = from; index <= to; ++index) {
+			if (mask[index] == 0) {
+				if (!inRun) {
+					push(index);
+					inRun = true;
+				}
+			}
+			else {
+				inRun = false;
+			}
+		}
+	}
+
+	private void push(final int index) {
+		if (stackSize == stack.length) {
+			stack = Arrays.copyOf(stack, stackSize * 2);
+		}
+		stack[stackSize++] = index;
+	}
+
+	private void recordSpan(final int first, final int last) {
+		if (spansSize + 2 > spans.length) {
+			spans = Arrays.copyOf(spans, spans.length * 2);
+		}
+		spans[spansSize++] = first;
+		spans[spansSize++] = last;
+	}
+}
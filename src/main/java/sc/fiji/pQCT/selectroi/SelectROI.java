@@ -28,26 +28,37 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package sc.fiji.pQCT.selectroi;
 
-import java.awt.Polygon;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
 
-import ij.IJ;
-import ij.ImagePlus;
-import ij.gui.PolygonRoi;
-import ij.gui.Roi;
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
 import sc.fiji.pQCT.io.ScaledImageData;
+import sc.fiji.pQCT.utils.PolarImage;
+import sc.fiji.pQCT.utils.PolarRayCaster;
 
 public class SelectROI extends RoiSelector {
 
 	public final Vector<DetectedEdge> edges;
+	// Segmentations of the same image at other thresholds, built on demand
+	private final List<ThresholdSegmentation> thresholdRois = new ArrayList<>();
+	private SieveMoments sieveMoments;
+	private PeelingMap sievePeelingMap;
+	private PolarImage sievePolarImage;
 
+	/**
+	 * Segments the bone at the given threshold.
+	 *
+	 * @param manualRoi pixels the segmentation is limited to if details.manualRoi
+	 *          is set, or null.
+	 */
 	public SelectROI(final ScaledImageData dataIn,
-		final ImageAndAnalysisDetails detailsIn, final ImagePlus imp,
-		final double boneThreshold, final boolean setRoi) throws ExecutionException
+		final ImageAndAnalysisDetails detailsIn, final BitMask manualRoi,
+		final double boneThreshold) throws ExecutionException
 	{
-		super(dataIn, detailsIn, imp);
+		super(dataIn, detailsIn, manualRoi);
 		// Select ROI and set everything else than the roi to minimum
 		cortexROI = new double[width * height];
 		cortexRoiI = new Vector<>();
@@ -56,66 +67,21 @@ public class SelectROI extends RoiSelector {
 		cortexAreaRoiJ = new Vector<>();
 		boneMarrowRoiI = new Vector<>();
 		boneMarrowRoiJ = new Vector<>();
-		Roi ijROI = imp.getRoi();
 		final double[] tempScaledImage = scaledImage.clone();
-		if (ijROI != null && details.manualRoi) {
-			// Set pixels outside the manually selected ROI to zero
-			for (int j = 0; j < height; j++) {
-				for (int i = 0; i < width; i++) {
-					if (!ijROI.contains(i, j)) {
-						// Check whether pixel is within ROI, mark with bone threshold
-						tempScaledImage[i + j * width] = minimum;
-					}
-				}
-			}
-			final Polygon polygon = ijROI.getPolygon();
-			if (polygon != null) {
-				// Check whether a polygon can be acquired and include its points
-				for (int j = 0; j < polygon.npoints; j++) {
-					final int index = polygon.xpoints[j] + polygon.ypoints[j] * width;
-					tempScaledImage[index] = scaledImage[index];
-				}
-			}
-		}
-		final Vector<Object> boneMasks = getSieve(tempScaledImage, boneThreshold,details.grTrackOn,
-			details.roiChoice, details.guessStacked, details.stacked,
+		limitToManualRoi(tempScaledImage);
+		final SieveResult boneMasks = getSieve(tempScaledImage, boneThreshold,details.grTrackOn,
+			details.roiChoice, details.guessStacked, stacked,
 			details.guessFlip, details.allowCleaving);
-		sieve = (byte[]) boneMasks.get(0);
-		result = (byte[]) boneMasks.get(1);
-		final Vector<DetectedEdge> boneEdges = (Vector<DetectedEdge>) boneMasks.get(
-			2);
-		selection = (Integer) boneMasks.get(3);
-		// Add the roi to the image
-		if (setRoi) {
-			final int[] xcoordinates = new int[boneEdges.get(selection).iit.size()];
-			final int[] ycoordinates = new int[boneEdges.get(selection).iit.size()];
-			for (int i = 0; i < boneEdges.get(selection).iit.size(); ++i) {
-				xcoordinates[i] = boneEdges.get(selection).iit.get(i);
-				ycoordinates[i] = boneEdges.get(selection).jiit.get(i);
-			}
-			// Flip the original image prior to adding the ROI, if scaled image is
-			// flipped
-			if ((details.flipHorizontal || details.flipVertical) && imp
-				.getRoi() != null)
-			{
-				// Remove existing ROIs in order to flip the whole image...
-				IJ.run(imp, "Select None", "");
-			}
-			if (details.flipHorizontal) {
-				imp.getProcessor().flipVertical();
-				imp.updateAndDraw();
-			}
-			if (details.flipVertical) {
-				imp.getProcessor().flipHorizontal();
-				imp.updateAndDraw();
-			}
-			ijROI = new PolygonRoi(xcoordinates, ycoordinates, boneEdges.get(
-				selection).iit.size(), Roi.POLYGON);
-			imp.setRoi(ijROI);
-		}
+		sieve = boneMasks.sieve;
+		result = boneMasks.result;
+		final Vector<DetectedEdge> boneEdges = boneMasks.edges;
+		selection = boneMasks.selection;
 
-		for (int j = 0; j < height; j++) {
-			for (int i = 0; i < width; i++) {
+		// Only pixels of the sieve belong to the ROIs
+		Arrays.fill(cortexROI, minimum);
+		final BoundingBox bounds = getSieveMoments().bounds;
+		for (int j = bounds.minY; j <= bounds.maxY; j++) {
+			for (int i = bounds.minX; i <= bounds.maxX; i++) {
 				final int index = i + j * width;
 				if (scaledImage[index] < areaThreshold & sieve[index] > 0) {
 					boneMarrowRoiI.add(i);
@@ -130,11 +96,102 @@ public class SelectROI extends RoiSelector {
 					cortexRoiI.add(i);
 					cortexRoiJ.add(j);
 				}
-				else {
-					cortexROI[index] = minimum;
-				}
 			}
 		}
 		edges = boneEdges;
 	}
+
+	/** The outcome of segmenting the image at another threshold */
+	private static class ThresholdSegmentation {
+
+		private final double threshold;
+		private final ImageAndAnalysisDetails details;
+		private final SelectROI roi;
+		private final ExecutionException failure;
+
+		private ThresholdSegmentation(final double threshold,
+			final ImageAndAnalysisDetails details, final SelectROI roi,
+			final ExecutionException failure)
+		{
+			this.threshold = threshold;
+			this.details = details;
+			this.roi = roi;
+			this.failure = failure;
+		}
+
+		private SelectROI get() throws ExecutionException {
+			if (failure != null) {
+				throw failure;
+			}
+			return roi;
+		}
+	}
+
+	/**
+	 * Returns the ROI of the same image segmented at the given threshold with
+	 * the given details, e.g. with the stacked and flip guesses made so far for
+	 * the scan. The segmentation is done on the first call for the threshold and
+	 * details, and later calls get the same ROI, or the same exception if the
+	 * segmentation failed.
+	 */
+	public synchronized SelectROI getThresholdRoi(final double threshold,
+		final ImageAndAnalysisDetails thresholdDetails) throws ExecutionException
+	{
+		for (final ThresholdSegmentation segmentation : thresholdRois) {
+			if (segmentation.threshold == threshold &&
+				segmentation.details == thresholdDetails)
+			{
+				return segmentation.get();
+			}
+		}
+		ThresholdSegmentation segmentation;
+		try {
+			segmentation = new ThresholdSegmentation(threshold, thresholdDetails,
+				new SelectROI(scaledImageData, thresholdDetails, manualRoi, threshold),
+				null);
+		}
+		catch (final ExecutionException e) {
+			segmentation = new ThresholdSegmentation(threshold, thresholdDetails,
+				null, e);
+		}
+		thresholdRois.add(segmentation);
+		return segmentation.get();
+	}
+
+	/**
+	 * Returns the scaled image resampled along 360 rays from the centre of the
+	 * sieve, as far as the sieve reaches. Built on the first call and shared by
+	 * the mass distribution and concentric ring analyses.
+	 */
+	public synchronized PolarImage getSievePolarImage() {
+		if (sievePolarImage == null) {
+			sievePolarImage = new PolarImage(sieve, scaledImage, width,
+				getSieveMoments().getCentre(), PolarRayCaster.ANGLES,
+				PolarRayCaster.STEP);
+		}
+		return sievePolarImage;
+	}
+
+	/**
+	 * Returns the area, centroid and moments of the sieve, weighted by the
+	 * scaled image. Computed on the first call and shared by the analyses.
+	 */
+	public synchronized SieveMoments getSieveMoments() {
+		if (sieveMoments == null) {
+			sieveMoments = new SieveMoments(sieve, scaledImage, width, height);
+		}
+		return sieveMoments;
+	}
+
+	/**
+	 * Returns the erosion depth of every sieve pixel, used to peel the sieve to
+	 * any percentage. Computed on the first call.
+	 */
+	public synchronized PeelingMap getSievePeelingMap() {
+		if (sievePeelingMap == null) {
+			sievePeelingMap = new PeelingMap(sieve, width, height, getSieveMoments()
+				.bounds);
+		}
+		return sievePeelingMap;
+	}
 }
@@ -28,26 +28,23 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package sc.fiji.pQCT.selectroi;
 
-import java.awt.Polygon;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Vector;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.IntStream;
 
-import ij.ImagePlus;
-import ij.gui.Roi;
 import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
 import sc.fiji.pQCT.io.ScaledImageData;
 
 public class SelectSoftROI extends RoiSelector {
 
-	// ImageJ constructor
+	// Limited to manualRoi, if given and details.manualRoi is set
 	public SelectSoftROI(final ScaledImageData dataIn,
-		final ImageAndAnalysisDetails detailsIn, final ImagePlus imp)
+		final ImageAndAnalysisDetails detailsIn, final BitMask manualRoi)
 		throws ExecutionException
 	{
-		super(dataIn, detailsIn, imp);
+		super(dataIn, detailsIn, manualRoi);
 		// Soft tissue analysis
 		softSieve = null;
 		if (details.stOn) {
@@ -62,69 +59,46 @@ public class SelectSoftROI extends RoiSelector {
 
 			// Ignore data outside manually selected ROI, if manualRoi has been
 			// selected
-			final Roi ijROI = imp.getRoi();
-			if (ijROI != null && details.manualRoi) {
-				// Set pixels outside the manually selected ROI to zero
-				final double[] tempScaledImage = softScaledImage.clone();
-				// Check whether pixel is within ROI, mark with bone threshold
-				for (int j = 0; j < height; j++) {
-					for (int i = 0; i < width; i++) {
-						if (!ijROI.contains(i, j)) {
-							softScaledImage[i + j * width] = minimum;
-						}
-					}
-				}
-				// Check whether a polygon can be acquired and include polygon points
-				// too
-				final Polygon polygon = ijROI.getPolygon();
-				if (polygon != null) {
-					for (int j = 0; j < polygon.npoints; j++) {
-						final int index = polygon.xpoints[j] + polygon.ypoints[j] * width;
-						softScaledImage[index] = tempScaledImage[index];
-					}
-				}
-			}
+			limitToManualRoi(softScaledImage);
 
-			final Vector<Object> masks = getSieve(softScaledImage, airThreshold,
-				details.roiChoiceSt, details.guessStacked, details.stacked, false,
+			final SieveResult masks = getSieve(softScaledImage, airThreshold,
+				details.roiChoiceSt, details.guessStacked, stacked, false,
 				true);
-			softSieve = (byte[]) masks.get(0);
+			softSieve = masks.sieve;
 
 			// Erode three layers of pixels from the fat sieve to get rid of higher
 			// density layer (i.e. skin) on top of fat to enable finding muscle border
-			byte[] muscleSieve = softSieve.clone();
-			final double[] muscleImage = softScaledImage.clone();
+			final BitMask subCutaneousFat = BitMask.of(softSieve, width, height);
 
 			// Remove skin by eroding three layers of pixels
 			for (int i = 0; i < 3; ++i) {
-				muscleSieve = erode(muscleSieve);
+				subCutaneousFat.erode();
 			}
-			// The three layers of skin removed
-			final byte[] subCutaneousFat = muscleSieve.clone();
-
-			// Remove everything other than the selected limb from the image
-			for (int i = 0; i < muscleSieve.length; ++i) {
-				if (muscleSieve[i] < 1) {
-					muscleImage[i] = minimum;
-				}
+			// The three layers of skin removed, remove everything other than the
+			// selected limb from the image
+			final double[] muscleImage = new double[softScaledImage.length];
+			Arrays.fill(muscleImage, minimum);
+			for (int i = subCutaneousFat.nextSetBit(0); i >= 0; i = subCutaneousFat
+				.nextSetBit(i + 1))
+			{
+				muscleImage[i] = softScaledImage[i];
 			}
 			// Look for muscle outline
-			final Vector<Object> muscleMasks = getSieve(muscleImage,
+			final SieveResult muscleMasks = getSieve(muscleImage,
 				details.muscleThreshold, "Bigger", details.guessStacked,
-				details.stacked, false, false);
-			final List<DetectedEdge> muscleEdges = (Vector<DetectedEdge>) muscleMasks
-				.get(2);
+				stacked, false, false);
+			final List<DetectedEdge> muscleEdges = muscleMasks.edges;
 			muscleEdges.sort(Collections.reverseOrder());
 			int tempMuscleArea = 0;
-			muscleSieve = new byte[softSieve.length];
+			final byte[] muscleSieve = new byte[softSieve.length];
 			int areaToAdd = 0;
 			// Include areas that contribute more than 1.0% on top of what is already
 			// included
 			while (areaToAdd < muscleEdges.size() && tempMuscleArea *
 				0.01 < muscleEdges.get(areaToAdd).area)
 			{
-				final byte[] tempMuscleSieve = fillSieve(muscleEdges.get(areaToAdd).iit,
-					muscleEdges.get(areaToAdd).jiit, width, height, muscleImage,
+				final byte[] tempMuscleSieve = fillSieve(muscleEdges.get(
+					areaToAdd).contour, width, height, muscleImage,
 					details.muscleThreshold);
 				for (int i = 0; i < tempMuscleSieve.length; ++i) {
 					if (tempMuscleSieve[i] > 0) {
@@ -136,21 +110,15 @@ public class SelectSoftROI extends RoiSelector {
 			}
 
 			// Dilate the sieve to include all muscle pixels
-			byte[] tempMuscleSieve = muscleSieve.clone();
-			tempMuscleSieve = dilate(tempMuscleSieve, (byte) 1, (byte) 0, (byte) 2);
-
-			eroded = new byte[softSieve.length];
-			for (int i = 0; i < tempMuscleSieve.length; ++i) {
-				if (tempMuscleSieve[i] == 1) {
-					subCutaneousFat[i] = 0;
-				}
-			}
+			final BitMask tempMuscleSieve = BitMask.of(muscleSieve, width, height)
+				.dilate();
+			subCutaneousFat.andNot(tempMuscleSieve);
 
 			// create temp boneResult to wipe out bone and marrow
-			final Vector<Object> masks2 = getSieve(softScaledImage, softThreshold,
-				details.roiChoiceSt, details.guessStacked, details.stacked, false,
+			final SieveResult masks2 = getSieve(softScaledImage, softThreshold,
+				details.roiChoiceSt, details.guessStacked, stacked, false,
 				false);
-			final byte[] boneResult = (byte[]) masks2.get(1);
+			final byte[] boneResult = masks2.result;
 
 			for (int i = 0; i < softSieve.length; ++i) {
 				if (softSieve[i] == 1 && softScaledImage[i] >= airThreshold &&
@@ -173,10 +141,10 @@ public class SelectSoftROI extends RoiSelector {
 						softSieve[i] = 4;
 					}
 				}
-				if (subCutaneousFat[i] == 1) {
-					// Subcut fat
-					softSieve[i] = 5;
-				}
+			}
+			// Subcut fat
+			subCutaneousFat.fill(softSieve, (byte) 5);
+			for (int i = 0; i < softSieve.length; ++i) {
 				if (boneResult[i] == 1) {
 					if (softScaledImage[i] >= fatThreshold) {
 						// Bone & marrow
@@ -187,13 +155,10 @@ public class SelectSoftROI extends RoiSelector {
 						softSieve[i] = 7;
 					}
 				}
-				if (softSieve[i] > 0 && subCutaneousFat[i] == 0 &&
-					tempMuscleSieve[i] == 0)
-				{
-					// Skin eroded pixels
-					eroded[i] = 1;
-				}
 			}
+			// Skin eroded pixels
+			eroded = BitMask.of(softSieve, width, height).andNot(subCutaneousFat)
+				.andNot(tempMuscleSieve).toBytes((byte) 1);
 		}
 	}
 }
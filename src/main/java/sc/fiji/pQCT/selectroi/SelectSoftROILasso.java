@@ -35,9 +35,9 @@ import java.util.concurrent.ExecutionException;
 
 public class SelectSoftROILasso extends RoiSelector{
 	int radialDivisions = 720;
-	//ImageJ constructor
-	public SelectSoftROILasso(ScaledImageData dataIn,ImageAndAnalysisDetails detailsIn, ImagePlus imp) throws ExecutionException{
-		super(dataIn,detailsIn, imp);	//,boneThreshold,setRoi);
+	//Limited to manualRoi, if given and details.manualRoi is set
+	public SelectSoftROILasso(ScaledImageData dataIn,ImageAndAnalysisDetails detailsIn, BitMask manualRoi) throws ExecutionException{
+		super(dataIn,detailsIn, manualRoi);	//,boneThreshold,setRoi);
 		//Soft tissue analysis
 		softSieve = null;
 		byte[] softResult = null;
@@ -58,34 +58,13 @@ public class SelectSoftROILasso extends RoiSelector{
 
 
 			/**Ignore data outside manually selected ROI, if manualRoi has been selected*/
-			Roi ijROI = imp.getRoi();
-			if (ijROI != null && details.manualRoi){	/*Set pixels outside the manually selected ROI to zero*/
-			double[] tempScaledImage = Arrays.copyOf(softScaledImage,softScaledImage.length);
-				/*Check whether pixel is within ROI, mark with bone threshold*/
-				for (int j = 0;j< height;j++){
-					for (int i = 0; i < width;i++){
-						if (ijROI.contains(i,j)){
-						}else{
-							softScaledImage[i+j*width] = minimum;
-						}
-					}
-				}
-				/*Check whether a polygon can be acquired and include polygon points too*/
-				Polygon polygon = ijROI.getPolygon();
-				if (polygon != null){
-					for (int j = 0;j< polygon.npoints;j++){
-						softScaledImage[polygon.xpoints[j]+polygon.ypoints[j]*width] = tempScaledImage[polygon.xpoints[j]+polygon.ypoints[j]*width];
-					}
-				}
-			}
-
-
+			limitToManualRoi(softScaledImage);
 
 			try{
-				Vector<Object> masks = getSieve(softScaledImage,airThreshold,details.roiChoiceSt,details.guessStacked,details.stacked,false,true);
-				softSieve						= (byte[]) masks.get(0);
-				softResult					 	= (byte[]) masks.get(1);
-				Vector<DetectedEdge> stEdges	= (Vector<DetectedEdge>) masks.get(2);
+				SieveResult masks = getSieve(softScaledImage,airThreshold,details.roiChoiceSt,details.guessStacked,stacked,false,true);
+				softSieve						= masks.sieve;
+				softResult					 	= masks.result;
+				Vector<DetectedEdge> stEdges	= masks.edges;
 
 				/*Erode three layers of pixels from the fat sieve to get rid of higher density layer (i.e. skin)
 				on top of fat to enable finding muscle border
@@ -105,16 +84,16 @@ public class SelectSoftROILasso extends RoiSelector{
 					}
 				}
 				/*Look for muscle outline*/
-				Vector<Object> muscleMasks = getSieve(muscleImage,details.muscleThreshold,"Bigger",details.guessStacked,details.stacked,false,false);
-				//muscleSieve		= (byte[]) muscleMasks.get(0);
-				Vector<DetectedEdge> muscleEdges = (Vector<DetectedEdge>) muscleMasks.get(2);
+				SieveResult muscleMasks = getSieve(muscleImage,details.muscleThreshold,"Bigger",details.guessStacked,stacked,false,false);
+				//muscleSieve		= muscleMasks.sieve;
+				Vector<DetectedEdge> muscleEdges = muscleMasks.edges;
 				Collections.sort(muscleEdges,Collections.reverseOrder());
 				int tempMuscleArea=0;
 				muscleSieve = new byte[softSieve.length];
 				int areaToAdd=0;
 				/*Include areas that contribute more than 1.0% on top of what is already included*/
 				while (areaToAdd< muscleEdges.size() && tempMuscleArea*0.01 < muscleEdges.get(areaToAdd).area){
-					byte[] tempMuscleSieve = fillSieve(muscleEdges.get(areaToAdd).iit, muscleEdges.get(areaToAdd).jiit,width,height,muscleImage,details.muscleThreshold);
+					byte[] tempMuscleSieve = fillSieve(muscleEdges.get(areaToAdd).contour,width,height,muscleImage,details.muscleThreshold);
 					for (int i = 0; i<tempMuscleSieve.length;++i){
 						if (tempMuscleSieve[i] > 0){muscleSieve[i] = tempMuscleSieve[i];}
 					}
@@ -141,8 +120,8 @@ public class SelectSoftROILasso extends RoiSelector{
 					3) rotate livewire init pixels around a few times to get the segmentation to go through subcut/intramuscular fat
 				
 				*/
-				Vector<Object> masks2 = getSieve(softScaledImage,softThreshold,details.roiChoiceSt,details.guessStacked,details.stacked,false,false);
-				byte[] boneResult	= (byte[]) masks2.get(1);
+				SieveResult masks2 = getSieve(softScaledImage,softThreshold,details.roiChoiceSt,details.guessStacked,stacked,false,false);
+				byte[] boneResult	= masks2.result;
 				ArrayList<Double> ii = new ArrayList<Double>();
 				ArrayList<Double> jj = new ArrayList<Double>();
 				double[] softCentre = new double[2];
@@ -226,11 +205,7 @@ public class SelectSoftROILasso extends RoiSelector{
 					int[][] fromSeedToCursor;
 					int prevLength = 0;
 					for (int i = 0;i<seedii.size()-1; ++i){
-						lwc.setSeed(seedii.get(i),seedjj.get(i));
-						try{Thread.sleep(10);}catch(Exception e){}
-						while ((fromSeedToCursor = lwc.returnPath(seedii.get(i+1),seedjj.get(i+1))) == null){
-							try{Thread.sleep(1);}catch(Exception e){}
-						}
+						fromSeedToCursor = lwc.findPath(seedii.get(i),seedjj.get(i),seedii.get(i+1),seedjj.get(i+1));
 						for (int iii = 0;iii< fromSeedToCursor.length;++iii){
 							edgeii.add((int) fromSeedToCursor[iii][0]);
 							edgejj.add((int) fromSeedToCursor[iii][1]);
@@ -242,11 +217,7 @@ public class SelectSoftROILasso extends RoiSelector{
 						
 					}
 					//Connect the last bit
-					lwc.setSeed(seedii.get(seedii.size()-1),seedjj.get(seedjj.size()-1));
-					try{Thread.sleep(10);}catch(Exception e){}
-					while ((fromSeedToCursor = lwc.returnPath(seedii.get(0),seedjj.get(0))) == null){
-						try{Thread.sleep(1);}catch(Exception e){}
-					}
+					fromSeedToCursor = lwc.findPath(seedii.get(seedii.size()-1),seedjj.get(seedjj.size()-1),seedii.get(0),seedjj.get(0));
 					
 					
 					for (int i = 0;i< fromSeedToCursor.length;++i){
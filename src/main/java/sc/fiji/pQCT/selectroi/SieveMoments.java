@@ -0,0 +1,115 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+import java.util.Arrays;
+
+/**
+ * Area, centroid, bounding box and second moments of the pixels of a sieve,
+ * and optionally their summed density in an image. The sieve is scanned once,
+ * collecting the indices of its pixels, and the moments about the centroid
+ * are then summed over those pixels only.
+ */
+public class SieveMoments {
+
+	public final int area;
+	public final double centreX;
+	public final double centreY;
+	/** Bounding box of the sieve, empty if the sieve has no pixels */
+	public final BoundingBox bounds;
+	/** Second moments about the centroid in pixels, sum of x^2, y^2 and xy */
+	public final double xx;
+	public final double yy;
+	public final double xy;
+	/** Sum of the image values in the sieve, 0 without an image */
+	public final double density;
+
+	/**
+	 * @param sieve pixels with a value greater than zero belong to the sieve
+	 * @param image densities for the summed density, or null
+	 */
+	public SieveMoments(final byte[] sieve, final double[] image,
+		final int width, final int height)
+	{
+		int[] indices = new int[1024];
+		int count = 0;
+		double sumX = 0;
+		double sumY = 0;
+		double sumDensity = 0;
+		int left = width;
+		int right = -1;
+		int top = height;
+		int bottom = -1;
+		for (int j = 0; j < height; j++) {
+			final int offset = j * width;
+			for (int i = 0; i < width; i++) {
+				if (sieve[offset + i] <= 0) {
+					continue;
+				}
+				if (count == indices.length) {
+					indices = Arrays.copyOf(indices, 2 * count);
+				}
+				indices[count++] = offset + i;
+				sumX += i;
+				sumY += j;
+				if (image != null) {
+					sumDensity += image[offset + i];
+				}
+				left = Math.min(left, i);
+				right = Math.max(right, i);
+				top = Math.min(top, j);
+				bottom = Math.max(bottom, j);
+			}
+		}
+		area = count;
+		bounds = new BoundingBox(left, top, right, bottom);
+		density = sumDensity;
+		centreX = sumX / count;
+		centreY = sumY / count;
+
+		double sumXx = 0;
+		double sumYy = 0;
+		double sumXy = 0;
+		for (int p = 0; p < count; p++) {
+			final double x = indices[p] % width - centreX;
+			final double y = indices[p] / width - centreY;
+			sumXx += x * x;
+			sumYy += y * y;
+			sumXy += x * y;
+		}
+		xx = sumXx;
+		yy = sumYy;
+		xy = sumXy;
+	}
+
+	/** @return the centroid as x, y */
+	public double[] getCentre() {
+		return new double[] { centreX, centreY };
+	}
+}
@@ -28,10 +28,16 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package sc.fiji.pQCT.selectroi.liveWireEngine;
 
-import static java.util.Arrays.stream;
-
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.PriorityQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 
 /**
  * Modified by Timo Rantalainen 2012 - 2014 from IvusSnakes
@@ -42,33 +48,120 @@ import java.util.PriorityQueue;
  * Mortensen 1997. Interactive live-wire boundary extraction. Medical Image
  * Analysis (1996/7) volume 1, number 4, pp 331-341.
  * </p>
+ * <p>
+ * The cost maps and the Dijkstra search state are kept in flat arrays indexed
+ * by row * columns + column, and the search uses an indexed binary heap with
+ * decrease-key instead of a queue of node objects. The search state is reused
+ * between seeds; a stamp per search tells which entries are current.
+ * </p>
+ * <p>
+ * Searches started with {@link #setSeed(int, int)} run on a shared pool of
+ * daemon threads. Starting a new search cancels the previous one without
+ * waiting for it, and {@link #getPath(int, int)} blocks only until the
+ * requested point has been settled.
+ * </p>
+ * <p>
+ * The cost maps are built in parallel row bands, and can be cached between
+ * instances made from the same image by passing a key that identifies it.
+ * The cached maps are only reused if the pixels have not changed since they
+ * were built.
+ * </p>
  */
-public class LiveWireCosts implements Runnable {
-
-	private static final int[][] LAPLACIAN_NEIGHBOUR_INDICES = { { -1, -1 }, { -1,
-		0 }, { -1, 1 }, { 0, 1 }, { 1, 1 }, { 1, 0 }, { 1, -1 }, { 0, -1 } };
-	private final double[][] imagePixels; // stores Pixels from original image
-	private final PriorityQueue<PixelNode> pixelCosts;
-	private final double[][] gradientRows; // stores image gradient modulus
-	private final double[][] gradientColumns; // stores image gradient modulus
-	// it is oriented: X = LEFT TO RIGHT
-	// Y = UP TO DOWN
-	private final double[][] gradientr; // stores image gradient RESULTANT modulus
-	private final double[][] laplacian;
-	private final int[][][] whereFrom; // stores where from path started
-	// stores whether the nodes were marked or not
-	private final boolean[][] visited;
+public class LiveWireCosts {
+
+	// 8-connected neighbourhood N, NE, E, SE, S, SW, W, NW
+	private static final int[] NEIGHBOUR_ROWS = { -1, -1, -1, 0, 1, 1, 1, 0 };
+	private static final int[] NEIGHBOUR_COLUMNS = { -1, 0, 1, 1, 1, 0, -1,
+		-1 };
+	// Unit vectors towards the neighbours
+	private static final double[] UNIT_ROWS = new double[8];
+	private static final double[] UNIT_COLUMNS = new double[8];
+	private static final double DIRECTION_SCALE = 2.0 / (3.0 * Math.PI);
+	// Cost maps of the images still in use, by image key
+	private static final Map<Object, List<CostMaps>> COST_MAP_CACHE =
+		new WeakHashMap<>();
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+		runnable -> {
+			final Thread thread = new Thread(runnable, "LiveWire");
+			thread.setDaemon(true);
+			return thread;
+		});
 	private final int rows;
 	private final int columns;
 	private final double gw;// Gradient Magnitude Weight
 	private final double dw;// Gradient Direction Weight
 	private final double zw;// Binary Laplacian Weight
-	private int sr; // seed x and seed y, weight zero for this point
-	private int sc;
-	private int tr; // thread x and y passed as parameters
-	private int tc;
-	private Thread myThread;
-	private boolean myThreadRuns;// flag for thread state
+	// Gradient magnitude and Laplacian zero-crossing cost of entering a pixel
+	private final double[] pixelCosts;
+	// Unit gradient direction of each pixel, rotated by 90 degrees
+	private final double[] directionRows;
+	private final double[] directionColumns;
+	// Dijkstra state, valid where the stamp equals that of the current search.
+	// Only one search at a time updates it, guarded by searchLock
+	private final double[] distances;
+	private final int[] whereFrom; // stores where from path started
+	private final int[] reached;
+	private final int[] settled;
+	private final int[] heap;
+	private final int[] heapPositions;
+	private int heapSize;
+	private int searchStamp;
+	private int[] pathBuffer = new int[256];
+	private final Object searchLock = new Object();
+	// Notified when a waited for point is settled or a search ends
+	private final Object settledMonitor = new Object();
+	private int searchCount;
+	private volatile Search current;
+
+	/** The seed, and the state of one search */
+	private static class Search {
+
+		private final int stamp;
+		private final int seed; // weight zero for this point
+		private final int target;
+		private volatile boolean cancelled;
+		private volatile boolean done;
+		// Written after every settled point so that readers see the search state
+		private volatile int settledCount;
+		private volatile int waitingFor = -1;
+
+		private Search(final int stamp, final int seed, final int target) {
+			this.stamp = stamp;
+			this.seed = seed;
+			this.target = target;
+		}
+	}
+
+	static {
+		for (int k = 0; k < 8; ++k) {
+			final double mod = Math.sqrt(NEIGHBOUR_ROWS[k] * NEIGHBOUR_ROWS[k] +
+				NEIGHBOUR_COLUMNS[k] * NEIGHBOUR_COLUMNS[k]);
+			UNIT_ROWS[k] = NEIGHBOUR_ROWS[k] / mod;
+			UNIT_COLUMNS[k] = NEIGHBOUR_COLUMNS[k] / mod;
+		}
+	}
+
+	/** Cost maps of an image for one set of weights */
+	private static class CostMaps {
+
+		private final double gw;
+		private final double zw;
+		// The pixels the maps were built from, row by row
+		private final double[] pixels;
+		private final double[] pixelCosts;
+		private final double[] directionRows;
+		private final double[] directionColumns;
+
+		private CostMaps(final double gw, final double zw, final double[] pixels) {
+			this.gw = gw;
+			this.zw = zw;
+			this.pixels = pixels;
+			final int size = pixels.length;
+			pixelCosts = new double[size];
+			directionRows = new double[size];
+			directionColumns = new double[size];
+		}
+	}
 
 	/**
 	 * Constructor
@@ -77,319 +170,488 @@ public class LiveWireCosts implements Runnable {
 	 */
 	// initializes Dijkstra with the image
 	public LiveWireCosts(final double[][] imagePixels) {
-
 		// initializes weights for edge cost taken from Barret 1997
 		// these are default values
-		gw = 0.43;
-		zw = 0.43;
-		dw = 0.13;
-		// initializes all other matrices
+		this(imagePixels, 0.43, 0.43, 0.13, null);
+	}
+
+	/**
+	 * Constructor that reuses the cost maps of an image seen before
+	 *
+	 * @param imagePixels 2D gray scale image in
+	 * @param imageKey identifies the image, e.g. the pixel array of its
+	 *          processor. The cost maps are cached as long as the key is
+	 *          reachable, and rebuilt if the pixels have changed.
+	 */
+	public LiveWireCosts(final double[][] imagePixels, final Object imageKey) {
+		this(imagePixels, 0.43, 0.43, 0.13, imageKey);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param imagePixels 2D gray scale image in
+	 * @param gw gradient magnitude weight
+	 * @param zw binary Laplacian weight
+	 * @param dw gradient direction weight
+	 * @param imageKey identifies the image for the cost map cache, or null to
+	 *          not cache the maps
+	 */
+	public LiveWireCosts(final double[][] imagePixels, final double gw,
+		final double zw, final double dw, final Object imageKey)
+	{
+		this.gw = gw;
+		this.zw = zw;
+		this.dw = dw;
 		rows = imagePixels.length;
 		columns = imagePixels[0].length;
-		this.imagePixels = imagePixels;
-		pixelCosts = new PriorityQueue<>();
-		whereFrom = new int[rows][columns][2];
-		visited = new boolean[rows][columns];
-		gradientRows = new double[rows][columns];
-		gradientColumns = new double[rows][columns];
-		gradientr = new double[rows][columns];
-		initGradient();
-		laplacian = new double[rows][columns];
-		initLaplacian();
+		final int size = rows * columns;
+		final CostMaps maps = getCostMaps(imagePixels, imageKey);
+		pixelCosts = maps.pixelCosts;
+		directionRows = maps.directionRows;
+		directionColumns = maps.directionColumns;
+		// initializes all other matrices
+		distances = new double[size];
+		whereFrom = new int[size];
+		reached = new int[size];
+		settled = new int[size];
+		heap = new int[size];
+		heapPositions = new int[size];
 	}
 
 	/**
-	 * Returns the path from seed point to point r,c
+	 * Returns the path from seed point to point r,c without waiting
 	 *
 	 * @param r x-coordinate of the target
 	 * @param c y-coordinate of the target
-	 * @return m x 2 array of the m-length path with x-, and y-coordinates
+	 * @return m x 2 array of the m-length path with x-, and y-coordinates, or
+	 *         null if the search has not reached the point yet
 	 */
 	public int[][] returnPath(final int r, final int c) {
-		// returns the path given mouse position
-
-		final int[][] pathCoordinates = new int[rows * columns][];
-
-		if (!visited[r][c]) {
-			// TODO refactor so that method blocks (waits) while !visited
-			// attempt to get path before creating it
-			// this might occur because of the thread
+		final Search search = current;
+		if (search == null || !isSettled(search, r * columns + c)) {
 			return null;
 		}
-		int length = 0;
-		int myr = r;
-		int myc = c;
-		pathCoordinates[length] = new int[] { r, c };
-		do { // while we haven't found the seed
-			++length;
-			myr = whereFrom[myr][myc][0];
-			myc = whereFrom[myr][myc][1];
-			pathCoordinates[length][0] = myr;
-			pathCoordinates[length][1] = myc;
+		return walkPath(search, r * columns + c);
+	}
+
+	/**
+	 * Returns the path from seed point to point r,c, waiting until the search
+	 * has reached the point
+	 *
+	 * @return m x 2 array of the m-length path with x-, and y-coordinates, or
+	 *         null if the search was cancelled or no seed has been set
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public int[][] getPath(final int r, final int c)
+		throws InterruptedException
+	{
+		final Search search = current;
+		if (search == null) {
+			return null;
 		}
-		while (!(myr == sr && myc == sc));
-
-		// path is from last point to first
-		// we need to invert it
-		final int[][] pathToReturn = new int[length + 1][2];
-		for (int i = 0; i <= length; i++) {
-			pathToReturn[i][0] = pathCoordinates[length - i][0];
-			pathToReturn[i][1] = pathCoordinates[length - i][1];
+		final int node = r * columns + c;
+		synchronized (settledMonitor) {
+			while (!isSettled(search, node)) {
+				if (search.done) {
+					return null;
+				}
+				search.waitingFor = node;
+				settledMonitor.wait();
+			}
 		}
-		return pathToReturn;
+		return walkPath(search, node);
 	}
 
 	/*set the seed point to start Dijkstra
 	@param r x-coordinate of the seed
 	@param c y-coordinate of the seed
+	@return handle of the search, done once every point has been settled
 	*/
-	public void setSeed(final int r, final int c) {
-		myThreadRuns = false;
-		if (myThread != null) {
-			try {
-				myThread.join();
-			}
-			catch (final InterruptedException ignored) {}
-		}
-		tr = r;
-		tc = c;
-		myThreadRuns = true;
-		myThread = new Thread(this);
-		myThread.start();
+	public Future<?> setSeed(final int r, final int c) {
+		final Search search = newSearch(r * columns + c, -1);
+		return EXECUTOR.submit(() -> run(search));
 	}
 
-	/** Implement the Runnable interface */
-	public void run() {
-		// runs set point in parallel
-		final int r = tr;
-		final int c = tc;
-		int[] nextIndex;
-		sr = r;
-		sc = c;
-
-		for (int i = 0; i < rows; i++) {
-			for (int j = 0; j < columns; j++) {
-				visited[i][j] = false;
-			}
+	/** Stops the current search without waiting for it */
+	public void cancel() {
+		final Search search = current;
+		if (search != null) {
+			search.cancelled = true;
 		}
+	}
 
-		visited[r][c] = true;
-		int[] coordinates = { r, c };
-		whereFrom[r][c] = coordinates;
+	/**
+	 * Finds the path from the seed to the target in the calling thread. The
+	 * search stops as soon as the target is settled, so only the pixels cheaper
+	 * to reach than the target are visited.
+	 *
+	 * @return m x 2 array of the m-length path from the seed to the target
+	 */
+	public int[][] findPath(final int seedR, final int seedC, final int targetR,
+		final int targetC)
+	{
+		final Search search = newSearch(seedR * columns + seedC, targetR *
+			columns + targetC);
+		run(search);
+		return returnPath(targetR, targetC);
+	}
 
-		updateCosts(r, c, 0);
+	private synchronized Search newSearch(final int seedNode,
+		final int targetNode)
+	{
+		cancel();
+		// int stamps last for 2^31 searches of one image
+		final Search search = new Search(++searchCount, seedNode, targetNode);
+		current = search;
+		return search;
+	}
 
-		while ((pixelCosts.peek() != null) && (myThreadRuns)) {
-			nextIndex = pixelCosts.peek().getIndex();
-			whereFrom[nextIndex[0]][nextIndex[1]] = pixelCosts.peek().getWhereFrom();
-			updateCosts(nextIndex[0], nextIndex[1], pixelCosts.peek().getDistance());
+	private boolean isSettled(final Search search, final int node) {
+		// Read the volatile count first to see the state written before it
+		return search.settledCount > 0 && settled[node] == search.stamp;
+	}
 
-			// removes pixels that are already visited and went to the queue
-			while (true) {
-				if (pixelCosts.peek() == null) break;
-				coordinates = pixelCosts.peek().getIndex();
-				if (!visited[coordinates[0]][coordinates[1]]) break;
-				pixelCosts.poll();
+	private synchronized int[][] walkPath(final Search search, final int node) {
+		// Walk back from the point to the seed
+		int length = 0;
+		int current = node;
+		while (true) {
+			if (length == pathBuffer.length) {
+				if (length >= whereFrom.length) {
+					// A newer search has overwritten the path
+					return null;
+				}
+				pathBuffer = Arrays.copyOf(pathBuffer, 2 * length);
+			}
+			pathBuffer[length++] = current;
+			if (current == search.seed) {
+				break;
 			}
+			current = whereFrom[current];
 		}
-		pixelCosts.clear();
+		// path is from last point to first, we need to invert it
+		final int[][] pathToReturn = new int[length][2];
+		for (int i = 0; i < length; i++) {
+			pathToReturn[i][0] = pathBuffer[length - 1 - i] / columns;
+			pathToReturn[i][1] = pathBuffer[length - 1 - i] % columns;
+		}
+		return pathToReturn;
 	}
 
-	/**
-	 * Check neighbours for Laplacian zero-crossing
-	 * 
-	 * @param tempLap mask of zero-crossings
-	 * @param neighbourhood the neighbourhood to check
-	 * @param centre the coordinates of the centre pixel to check the
-	 *          neighbourhood for
-	 * @return tempLap the zero-crossings mask
-	 */
-	private double[][] checkNeighbours(final double[][] tempLap,
-		final int[][] neighbourhood, final int[] centre)
-	{
-		for (final int[] coordinates : neighbourhood) {
-			final double atCoordinates = laplacian[coordinates[0]][coordinates[1]];
-			final double atCenter = laplacian[centre[0]][centre[1]];
-			if (Math.signum(atCenter) != Math.signum(atCoordinates) && Math.abs(
-				atCenter) < Math.abs(atCoordinates))
-			{
-				/*zero-crossing detected, change to 0 to disable laplacian*/
-				tempLap[centre[0]][centre[1]] = 0;
+	private void run(final Search search) {
+		synchronized (searchLock) {
+			try {
+				if (search.cancelled) {
+					return;
+				}
+				startSearch(search);
+				int count = 0;
+				while (heapSize > 0 && !search.cancelled) {
+					final int node = pop();
+					settled[node] = searchStamp;
+					search.settledCount = ++count;
+					final int waitingFor = search.waitingFor;
+					if (waitingFor >= 0 && settled[waitingFor] == searchStamp) {
+						synchronized (settledMonitor) {
+							settledMonitor.notifyAll();
+						}
+					}
+					if (node == search.target) {
+						break;
+					}
+					updateCosts(node);
+				}
+			}
+			finally {
+				search.done = true;
+				synchronized (settledMonitor) {
+					settledMonitor.notifyAll();
+				}
 			}
 		}
-		return tempLap;
 	}
 
-	// returns the edge cost of going from sx,sy to dx,dy
-	private double edgeCost(final int sr, final int sc, final int dr,
-		final int dc)
-	{
-		// fg is the Gradient Magnitude
-		double edgeCostSum = gw * gradientr[dr][dc] + zw * laplacian[dr][dc];
-		edgeCostSum += edgeDirectionCost(sr, sc, dr, dc) * dw;
-		return edgeCostSum;
+	private void startSearch(final Search search) {
+		searchStamp = search.stamp;
+		heapSize = 0;
+		distances[search.seed] = 0;
+		whereFrom[search.seed] = search.seed;
+		reached[search.seed] = searchStamp;
+		push(search.seed);
 	}
 
-	/**
-	 * Calculates edge direction cost
-	 * 
-	 * @param sr source pixel x-coordinate
-	 * @param sc source pixel y-coordinate
-	 * @param dr destination pixel x-coordinate
-	 * @param dc destination pixel y-coordinate
-	 * @return edgeDirectionCostValue edge direction cost
-	 */
-	private double edgeDirectionCost(final int sr, final int sc, final int dr,
-		final int dc)
-	{
-		final Vector2d Dp = (new Vector2d(gradientRows[sr][sc],
-			-gradientColumns[sr][sc])).getUnit();
-		final Vector2d Dq = (new Vector2d(gradientRows[dr][dc],
-			-gradientColumns[dr][dc])).getUnit();
-		final Vector2d p = new Vector2d(sr, sc);
-		final Vector2d q = new Vector2d(dr, dc);
-		final Vector2d L;
-		if (Dp.dotProduct(q.sub(p)) >= 0) {
-			L = q.sub(p).getUnit();
+	/*updates Costs and Paths for the neighbours of a settled pixel
+		calculated over 8 directions N, NE, E, SE, S, SW, W, NW
+	*/
+	private void updateCosts(final int node) {
+		final int r = node / columns;
+		final int c = node % columns;
+		for (int k = 0; k < 8; ++k) {
+			final int x = r + NEIGHBOUR_ROWS[k];
+			final int y = c + NEIGHBOUR_COLUMNS[k];
+			if (x < 0 || x >= rows || y < 0 || y >= columns) {
+				continue;
+			}
+			final int neighbour = x * columns + y;
+			if (settled[neighbour] == searchStamp) {
+				continue;
+			}
+			final double distance = distances[node] + linkCost(node, neighbour, k);
+			if (reached[neighbour] != searchStamp) {
+				reached[neighbour] = searchStamp;
+				distances[neighbour] = distance;
+				whereFrom[neighbour] = node;
+				push(neighbour);
+			}
+			else if (Double.compare(distance, distances[neighbour]) < 0) {
+				distances[neighbour] = distance;
+				whereFrom[neighbour] = node;
+				siftUp(heapPositions[neighbour]);
+			}
+		}
+	}
+
+	/*Barret 1996/1997 eqs 3 & 4, cost of moving from node to its neighbour k*/
+	private double linkCost(final int node, final int neighbour, final int k) {
+		final double dpr = directionRows[node];
+		final double dpc = directionColumns[node];
+		final double lr;
+		final double lc;
+		if (dpr * NEIGHBOUR_ROWS[k] + dpc * NEIGHBOUR_COLUMNS[k] >= 0) {
+			lr = UNIT_ROWS[k];
+			lc = UNIT_COLUMNS[k];
 		}
 		else {
-			L = p.sub(q).getUnit();
+			lr = -UNIT_ROWS[k];
+			lc = -UNIT_COLUMNS[k];
 		}
-		/*Barret 1996/1997 eqs 3 & 4*/
-		return 2.0 / (3.0 * Math.PI) * (Math.acos(Dp.dotProduct(L)) + Math.acos(L
-			.dotProduct(Dq)));
+		final double directionCost = DIRECTION_SCALE * (Math.acos(dpr * lr + dpc *
+			lc) + Math.acos(lr * directionRows[neighbour] + lc *
+				directionColumns[neighbour]));
+		return pixelCosts[neighbour] + directionCost * dw;
 	}
 
-	// initializes gradient image
-	private void initGradient() {
-		/*
-		Using sobel
-		for gx convolutes the following matrix
-		
-		|-1 0 1|
-		Gx = |-2 0 2|
-		|-1 0 1|
-		*/
-		for (int i = 1; i < rows - 1; ++i) {
-			for (int j = 1; j < columns - 1; ++j) {
-				gradientRows[i][j] = -1 * (imagePixels[i - 1][j - 1]) + 1 *
-					(imagePixels[i + 1][j - 1]) - 2 * (imagePixels[i - 1][j]) + 2 *
-						(imagePixels[i + 1][j]) - 1 * (imagePixels[i - 1][j + 1]) + 1 *
-							(imagePixels[i + 1][j + 1]);
-			}
+	private void push(final int node) {
+		heap[heapSize] = node;
+		heapPositions[node] = heapSize;
+		siftUp(heapSize++);
+	}
+
+	private int pop() {
+		final int top = heap[0];
+		--heapSize;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
 		}
+		return top;
+	}
 
-		// for gy convolutes the following matrix
-		//
-		// |-1 -2 -1|
-		// Gy = | 0 0 0|
-		// |+1 +2 +1|
-		//
-		for (int i = 1; i < rows - 1; ++i) {
-			for (int j = 1; j < columns - 1; ++j) {
-				gradientColumns[i][j] = -1 * (imagePixels[i - 1][j - 1]) + 1 *
-					(imagePixels[i - 1][j + 1]) - 2 * (imagePixels[i][j - 1]) + 2 *
-						(imagePixels[i][j + 1]) - 1 * (imagePixels[i + 1][j - 1]) + 1 *
-							(imagePixels[i + 1][j + 1]);
+	private void siftUp(int position) {
+		final int node = heap[position];
+		final double distance = distances[node];
+		while (position > 0) {
+			final int parent = (position - 1) >>> 1;
+			if (Double.compare(distance, distances[heap[parent]]) >= 0) {
+				break;
 			}
+			heap[position] = heap[parent];
+			heapPositions[heap[position]] = position;
+			position = parent;
 		}
-		for (int i = 1; i < rows - 1; i++) {
-			for (int j = 1; j < columns - 1; j++) {
-				gradientr[i][j] = Math.sqrt(gradientRows[i][j] * gradientRows[i][j] +
-					gradientColumns[i][j] * gradientColumns[i][j]);
+		heap[position] = node;
+		heapPositions[node] = position;
+	}
+
+	private void siftDown(int position) {
+		final int node = heap[position];
+		final double distance = distances[node];
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && Double.compare(distances[heap[child + 1]],
+				distances[heap[child]]) < 0)
+			{
+				++child;
+			}
+			if (Double.compare(distances[heap[child]], distance) >= 0) {
+				break;
 			}
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
 		}
+		heap[position] = node;
+		heapPositions[node] = position;
+	}
 
-		final double grMax = stream(gradientr).flatMapToDouble(Arrays::stream).max()
-			.orElse(Double.NEGATIVE_INFINITY);
-		for (int i = 0; i < gradientr.length; ++i) {
-			for (int j = 0; j < gradientr[i].length; ++j) {
-				gradientr[i][j] = 1.0 - gradientr[i][j] / grMax;
+	private CostMaps getCostMaps(final double[][] imagePixels,
+		final Object imageKey)
+	{
+		if (imageKey == null) {
+			return initCostMaps(imagePixels);
+		}
+		synchronized (COST_MAP_CACHE) {
+			final List<CostMaps> cached = COST_MAP_CACHE.computeIfAbsent(imageKey,
+				key -> new ArrayList<>());
+			final Iterator<CostMaps> iterator = cached.iterator();
+			while (iterator.hasNext()) {
+				final CostMaps maps = iterator.next();
+				if (maps.gw != gw || maps.zw != zw) {
+					continue;
+				}
+				if (isSameImage(maps.pixels, imagePixels)) {
+					return maps;
+				}
+				// The pixels have been edited in place
+				iterator.remove();
 			}
+			final CostMaps maps = initCostMaps(imagePixels);
+			cached.add(maps);
+			return maps;
 		}
 	}
 
-	/*initializes laplacian image zero-crossings. Marks zero-crossings with 0, otherwise the value is 1*/
-	private void initLaplacian() {
-
-		// Using finite differences convolute
-		// @formatter:off
-        final double[][] laplacianKernel = {
-		        { 0, 1, 0 },
-                { 1, -4, 1 },
-                { 0, 1, 0 }
-		};
-        // @formatter:on
-		for (int i = 1; i < rows - 1; i++) {
-			for (int j = 1; j < columns - 1; j++) {
-				laplacian[i][j] = 0;
-				for (int j2 = -1; j2 <= 1; ++j2) {
-					for (int i2 = -1; i2 <= 1; ++i2) {
-						laplacian[i][j] += imagePixels[i + i2][j + j2] *
-							laplacianKernel[i2 + 1][j2 + 1];
-					}
+	private boolean isSameImage(final double[] pixels,
+		final double[][] imagePixels)
+	{
+		if (pixels.length != rows * columns) {
+			return false;
+		}
+		for (int i = 0; i < rows; ++i) {
+			for (int j = 0; j < columns; ++j) {
+				if (Double.compare(pixels[i * columns + j], imagePixels[i][j]) != 0) {
+					return false;
 				}
 			}
 		}
+		return true;
+	}
 
-		/*Search for zero crossing to binarize the result*/
-		double[][] tempLap = new double[rows][columns];
-		for (final double[] row : tempLap) {
-			Arrays.fill(row, 1.0);
+	private CostMaps initCostMaps(final double[][] imagePixels) {
+		final int size = rows * columns;
+		final double[] pixels = new double[size];
+		for (int i = 0; i < rows; ++i) {
+			System.arraycopy(imagePixels[i], 0, pixels, i * columns, columns);
 		}
-		/*Check pixel neighbourhoods for zero-crossings*/
-		final int[][] neighbourhood = new int[8][2]; // 8 connected neighbourhood
-		for (int i = 1; i < rows - 1; i++) {
-			for (int j = 1; j < columns - 1; j++) {
-				tempLap[i][j] = 1;
-				if (laplacian[i][j] == 0) {
-					// No need to check neighbours
-					tempLap[i][j] = 0;
+		final CostMaps maps = new CostMaps(gw, zw, pixels);
+		final double[] gradientRows = new double[size];
+		final double[] gradientColumns = new double[size];
+		final double[] gradientr = new double[size];
+		final double[] rowMaxima = new double[rows];
+		Arrays.fill(rowMaxima, Double.NEGATIVE_INFINITY);
+		final double[] laplacian = new double[size];
+		IntStream.range(1, rows - 1).parallel().forEach(i -> {
+			initGradient(pixels, i, gradientRows, gradientColumns, gradientr,
+				rowMaxima);
+			initLaplacian(pixels, i, laplacian);
+		});
+		final double grMax = Arrays.stream(rowMaxima).max().orElse(
+			Double.NEGATIVE_INFINITY);
+		IntStream.range(0, rows).parallel().forEach(i -> {
+			for (int p = i * columns; p < (i + 1) * columns; ++p) {
+				final double zeroCrossing = i > 0 && i < rows - 1 && p > i * columns &&
+					p < (i + 1) * columns - 1 && isZeroCrossing(laplacian, p) ? 0.0
+						: 1.0;
+				maps.pixelCosts[p] = gw * (1.0 - gradientr[p] / grMax) + zw *
+					zeroCrossing;
+				final double x = gradientRows[p];
+				final double y = -gradientColumns[p];
+				if ((Math.abs(x) < 0.1) && (Math.abs(y) < 0.1)) {
+					// if the vector is null we'll use the direction (1,0) for it
+					maps.directionRows[p] = 1.0;
+					maps.directionColumns[p] = 0.0;
 				}
 				else {
-					// Check 8-connected neighbour
-					for (int th = 0; th < 8; ++th) {
-						neighbourhood[th][0] = i + LAPLACIAN_NEIGHBOUR_INDICES[th][0];
-						neighbourhood[th][1] = j + LAPLACIAN_NEIGHBOUR_INDICES[th][1];
-					}
-					tempLap = checkNeighbours(tempLap, neighbourhood, new int[] { i, j });
+					final double mod = Math.sqrt(x * x + y * y);
+					maps.directionRows[p] = x / mod;
+					maps.directionColumns[p] = y / mod;
 				}
 			}
+		});
+		return maps;
+	}
+
+	// Sobel gradient, and its magnitude for row i
+	private void initGradient(final double[] imagePixels, final int i,
+		final double[] gradientRows, final double[] gradientColumns,
+		final double[] gradientr, final double[] rowMaxima)
+	{
+		/*
+		Using sobel
+		for gx convolutes the following matrix
+		
+		|-1 0 1|
+		Gx = |-2 0 2|
+		|-1 0 1|
+		
+		and for gy
+		
+		|-1 -2 -1|
+		Gy = | 0 0 0|
+		|+1 +2 +1|
+		*/
+		double rowMax = rowMaxima[i];
+		for (int j = 1; j < columns - 1; ++j) {
+			final int p = i * columns + j;
+			final double gx = -1 * (imagePixels[p - columns - 1]) + 1 *
+				(imagePixels[p + columns - 1]) - 2 * (imagePixels[p - columns]) + 2 *
+					(imagePixels[p + columns]) - 1 * (imagePixels[p - columns + 1]) + 1 *
+						(imagePixels[p + columns + 1]);
+			final double gy = -1 * (imagePixels[p - columns - 1]) + 1 *
+				(imagePixels[p - columns + 1]) - 2 * (imagePixels[p - 1]) + 2 *
+					(imagePixels[p + 1]) - 1 * (imagePixels[p + columns - 1]) + 1 *
+						(imagePixels[p + columns + 1]);
+			gradientRows[p] = gx;
+			gradientColumns[p] = gy;
+			gradientr[p] = Math.sqrt(gx * gx + gy * gy);
+			rowMax = Math.max(rowMax, gradientr[p]);
 		}
-		/*OverWrite Laplacian*/
-		for (int i = 0; i < rows; i++) {
-			System.arraycopy(tempLap[i], 0, laplacian[i], 0, columns);
-		}
+		rowMaxima[i] = rowMax;
 	}
 
-	/*updates Costs and Paths for a given point
-		calculated over 8 directions N, NE, E, SE, S, SW, W, NW
-		@param r target pixel x-coordinate
-		@param c target pixel y-coordinate
-	*/
-	private void updateCosts(final int r, final int c, final double cost) {
+	// Laplacian of row i using finite differences, kernel [0 1 0; 1 -4 1; 0 1 0]
+	private void initLaplacian(final double[] imagePixels, final int i,
+		final double[] laplacian)
+	{
+		for (int j = 1; j < columns - 1; j++) {
+			final int p = i * columns + j;
+			// Same summation order as the 3 x 3 convolution
+			double sum = 0.0;
+			sum += imagePixels[p - columns - 1] * 0;
+			sum += imagePixels[p - 1] * 1;
+			sum += imagePixels[p + columns - 1] * 0;
+			sum += imagePixels[p - columns] * 1;
+			sum += imagePixels[p] * -4;
+			sum += imagePixels[p + columns] * 1;
+			sum += imagePixels[p - columns + 1] * 0;
+			sum += imagePixels[p + 1] * 1;
+			sum += imagePixels[p + columns + 1] * 0;
+			laplacian[p] = sum;
+		}
+	}
 
-		pixelCosts.poll();
-		final int[][] neighbourhood = new int[8][2]; // 8 connected neighbourhood
-		final int[][] neighbourIndices = { { -1, -1 }, { -1, 0 }, { -1, 1 }, { 0,
-			1 }, { 1, 1 }, { 1, 0 }, { 1, -1 }, { 0, -1 } };
-		// Check 8-connected neighbour
-		for (int th = 0; th < 8; ++th) {
-			neighbourhood[th][0] = r + neighbourIndices[th][0];
-			neighbourhood[th][1] = c + neighbourIndices[th][1];
+	/*Laplacian zero-crossings are marked with 0 in the cost, otherwise 1*/
+	private boolean isZeroCrossing(final double[] laplacian, final int p) {
+		final double atCenter = laplacian[p];
+		if (atCenter == 0) {
+			// No need to check neighbours
+			return true;
 		}
-		for (final int[] coordinates : neighbourhood) {
-			final int x = coordinates[0];
-			final int y = coordinates[1];
-			if (x < 0 || x >= rows || y < 0 || y >= columns) {
-				continue;
+		// Check 8-connected neighbour
+		for (int k = 0; k < 8; ++k) {
+			final double atNeighbour = laplacian[p + NEIGHBOUR_ROWS[k] * columns +
+				NEIGHBOUR_COLUMNS[k]];
+			if (Math.signum(atCenter) != Math.signum(atNeighbour) && Math.abs(
+				atCenter) < Math.abs(atNeighbour))
+			{
+				return true;
 			}
-			final int[] fromCoords = { r, c };
-			final int[] pixelCoords = { x, y };
-			final double distance = cost + edgeCost(r, c, x, y);
-			pixelCosts.add(new PixelNode(pixelCoords, distance, fromCoords));
 		}
-		visited[r][c] = true;
+		return false;
 	}
-
 }
@@ -2,14 +2,17 @@ package sc.fiji.pQCT.utils;
 
 /*
 	Cluster points into two groups. 
-	Calculate distance to all other points
 	Start from the points that are the farthest apart
 	Add next point to the cluster with the minimum distance
+	Nearest points are looked up from a PointGrid instead of sorted lists of
+	all pairwise distances
 */
 
 import sc.fiji.pQCT.selectroi.Coordinate;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 //Debugging
 //import ij.IJ;
@@ -45,145 +48,164 @@ public class ClusterPoints{
 	}
 	
 	public ClusterPoints(ArrayList<Coordinate> coordinates){
-		ArrayList<ArrayList<Distance>> distances = null;
-
-		
-		//Calculate distances between coordinates
-		//IJ.log("Start calculating distances");
-		distances = new ArrayList<ArrayList<Distance>>(coordinates.size());
-		//IJ.log(String.format("Start calculating distances %d",distances.size()));
-		double maxDist = Double.NEGATIVE_INFINITY;
-		int[] maxIndex = new int[]{0,0};
-		for (int i =0; i<coordinates.size();++i){
-			distances.add(new ArrayList<Distance>(coordinates.size()));
-			for (int j =0; j<coordinates.size();++j){
-				if (i != j){
-					distances.get(i).add(new Distance(coordinates.get(i),coordinates.get(j),i,j));
-					if (distances.get(i).get(distances.get(i).size()-1).distance > maxDist){
-						maxIndex[0] = i;
-						maxIndex[1] = j;
-						maxDist = distances.get(i).get(distances.get(i).size()-1).distance;
-					}
-					
-				}
+		final int n = coordinates.size();
+		cluster1 = new ArrayList<Coordinate>(n);
+		cluster2 = new ArrayList<Coordinate>(n);
+		if (n < 2){
+			for (Coordinate c : coordinates){
+				cluster1.add(new Coordinate(c));
 			}
-			//Sort distances here
-			Collections.sort(distances.get(i));
-			//IJ.log(String.format("Coordinate calculation i %05d",i));
+			return;
 		}
-		 	//Sort distances here
-		//IJ.log(String.format("Sorted distances %d",distances.size()));
-
-		//System.out.println("All distances");
-		//printDistanceArray(distances);
+		final double[] x = new double[n];
+		final double[] y = new double[n];
+		for (int i = 0; i<n; ++i){
+			x[i] = coordinates.get(i).ii;
+			y[i] = coordinates.get(i).jj;
+		}
+		final PointGrid grid = new PointGrid(x, y);
 		
 		//Start going through the dataset with the farthest apart points as the cluster centres
-		ArrayList<Coordinate> classified = new ArrayList<Coordinate>(coordinates.size());	//Retain information on whether a coordinate is classified or not
-		cluster1 = new ArrayList<Coordinate>(coordinates.size());
-		cluster2 = new ArrayList<Coordinate>(coordinates.size());
+		final int[] maxIndex = farthestPair(grid, x, y);
+		//The number of classifications made before the coordinate was first classified
+		final int[] classifiedAt = new int[n];
+		Arrays.fill(classifiedAt, Integer.MAX_VALUE);
+		int classified = 0;
+		classifiedAt[maxIndex[0]] = classified++;
+		classifiedAt[maxIndex[1]] = classified++;
+		grid.remove(maxIndex[0]);
+		grid.remove(maxIndex[1]);
 		cluster1.add(new Coordinate(coordinates.get(maxIndex[0])));
 		cluster2.add(new Coordinate(coordinates.get(maxIndex[1])));
-		classified.add(new Coordinate(coordinates.get(maxIndex[0])));	//Add the classified coordinate index
-		classified.add(new Coordinate(coordinates.get(maxIndex[1])));	//Add the classified coordinate index
-		//Loop through the coordinates to classify each, stop once all coordinates have been classified
-		ArrayList<Distance> temp1 = getDistances(distances,cluster1.get(cluster1.size()-1),classified); 
-		ArrayList<Distance> temp2 = getDistances(distances,cluster2.get(cluster2.size()-1),classified);
 		
-		while (classified.size() <coordinates.size()){
-			//System.out.println(String.format("c1 looking for %.0f %.0f",cluster1.get(cluster1.size()-1).ii,cluster1.get(cluster1.size()-1).jj));
-			
-			//System.out.println(String.format("printDist temp2"));
-			//printDistanceArray(temp2);
+		/*
+			Each cluster looks for the unclassified coordinate nearest to the
+			coordinate last added to it. The candidate is only looked up again
+			when it gets classified from that cluster, so the other cluster may
+			still hold a candidate that has been classified in the meantime.
+		*/
+		Candidate c1 = new Candidate(grid, maxIndex[0], classified);
+		Candidate c2 = new Candidate(grid, maxIndex[1], classified);
+		int last1 = maxIndex[0];
+		int last2 = maxIndex[1];
+		//Loop through the coordinates to classify each, stop once all coordinates have been classified
+		while (classified < n){
 			//Add the coordinate with the shortest distance to the pertinent cluster
-			if (temp1.get(0).distance <= temp2.get(0).distance){
-				//Handle closest to temp1
-				ArrayList<Distance> temp3 = getDistances2ndIndex(temp2, temp1.get(0).j);
-				if (temp3.size() < 1 || temp1.get(0).distance <= temp3.get(0).distance){
-					cluster1.add(new Coordinate(temp1.get(0).b));
+			if (c1.distance <= c2.distance){
+				//Handle closest to c1
+				if (!c2.wasOpen(c1.nearest, classifiedAt) || c1.distance <= grid.distance(c2.source, c1.nearest)){
+					cluster1.add(new Coordinate(coordinates.get(c1.nearest)));
+					last1 = c1.nearest;
 				}else{
-					cluster2.add(new Coordinate(temp1.get(0).b));
+					cluster2.add(new Coordinate(coordinates.get(c1.nearest)));
+					last2 = c1.nearest;
+				}
+				if (classifiedAt[c1.nearest] == Integer.MAX_VALUE){
+					classifiedAt[c1.nearest] = classified;
 				}
-				classified.add(new Coordinate(temp1.get(0).b));				
-				temp1 = getDistances(distances,cluster1.get(cluster1.size()-1),classified);		//Recalculate distances
+				++classified;
+				grid.remove(c1.nearest);
+				c1 = new Candidate(grid, last1, classified);		//Look up the next candidate
 			}else{
-				//Handle closest to temp2
-				ArrayList<Distance> temp3 = getDistances2ndIndex(temp1, temp2.get(0).j);
-				if (temp3.size() < 1 || temp2.get(0).distance <= temp3.get(0).distance){
-					cluster2.add(new Coordinate(temp2.get(0).b));
+				//Handle closest to c2
+				if (!c1.wasOpen(c2.nearest, classifiedAt) || c2.distance <= grid.distance(c1.source, c2.nearest)){
+					cluster2.add(new Coordinate(coordinates.get(c2.nearest)));
+					last2 = c2.nearest;
 				}else{
-					cluster1.add(new Coordinate(temp2.get(0).b));
+					cluster1.add(new Coordinate(coordinates.get(c2.nearest)));
+					last1 = c2.nearest;
 				}
-				classified.add(new Coordinate(temp2.get(0).b));
-				temp2 = getDistances(distances,cluster2.get(cluster2.size()-1),classified);	//Recalculate distances
-				//System.out.println(String.format("printDist classified size %05d",classified.size()));
+				if (classifiedAt[c2.nearest] == Integer.MAX_VALUE){
+					classifiedAt[c2.nearest] = classified;
+				}
+				++classified;
+				grid.remove(c2.nearest);
+				c2 = new Candidate(grid, last2, classified);	//Look up the next candidate
 			}
-			//IJ.log(String.format("printDist classified size %05d",classified.size()));
 		}
-		
-		
 	}
 	
-	private void printDistanceArray(ArrayList<Distance> a){
-		for (int i = 0; i<a.size();++i){
-			System.out.println(String.format("printDist index %05d i %04d j %04d distance %.2f",i,(int) a.get(i).i,(int) a.get(i).j,a.get(i).distance));
+	/*
+		The pair of coordinates farthest apart, the first one in index order in
+		case of ties. The end points are vertices of the convex hull, so only the
+		coordinates that are extreme both on their row and on their column need
+		to be compared.
+	*/
+	private static int[] farthestPair(PointGrid grid, double[] x, double[] y){
+		final Map<Double, int[]> rowExtremes = new HashMap<Double, int[]>();
+		final Map<Double, int[]> columnExtremes = new HashMap<Double, int[]>();
+		for (int i = 0; i<x.length; ++i){
+			updateExtremes(rowExtremes, y[i], x, i);
+			updateExtremes(columnExtremes, x[i], y, i);
 		}
-		
-	}
-	
-	//Get distances for the coordinate of interest. Exclude distances to already classified pixels
-	private ArrayList<Distance> getDistances(ArrayList<ArrayList<Distance>> a, Coordinate ind,ArrayList<Coordinate> classified){
-		
-		int cnt = 0;
-		while (!ind.equals(a.get(cnt).get(0).a)){
-			++cnt;
+		final boolean[] rowExtreme = new boolean[x.length];
+		for (int[] e : rowExtremes.values()){
+			rowExtreme[e[0]] = true;
+			rowExtreme[e[1]] = true;
 		}
-		
-		ArrayList<Distance> b = new ArrayList<Distance>(a.get(cnt).size());
-		for (int i = 0; i<a.get(cnt).size();++i){
-			//System.out.println(String.format("testing %.0f %.0f ind %.0f %.0f %b",a.get(i).a.ii,a.get(i).a.jj,ind.ii,ind.jj,!classified.contains(a.get(i).b)));
-			if (!classified.contains(a.get(cnt).get(i).b)){
-				b.add(a.get(cnt).get(i));
+		final boolean[] candidate = new boolean[x.length];
+		int count = 0;
+		for (int[] e : columnExtremes.values()){
+			for (int i : e){
+				if (rowExtreme[i] && !candidate[i]){
+					candidate[i] = true;
+					++count;
+				}
+			}
+		}
+		final int[] candidates = new int[count];
+		count = 0;
+		for (int i = 0; i<x.length; ++i){
+			if (candidate[i]){
+				candidates[count++] = i;
+			}
+		}
+		double maxDist = Double.NEGATIVE_INFINITY;
+		int[] maxIndex = new int[]{0,0};
+		for (int i : candidates){
+			for (int j : candidates){
+				if (i != j && grid.distance(i, j) > maxDist){
+					maxIndex[0] = i;
+					maxIndex[1] = j;
+					maxDist = grid.distance(i, j);
+				}
 			}
 		}
-		Collections.sort(b);
-		return b;		
+		return maxIndex;
 	}
 	
-		//Get distances for the coordinate of interest. Exclude distances to already classified pixels
-	private ArrayList<Distance> getDistances2ndIndex(ArrayList<Distance> a, int ind){
-		ArrayList<Distance> b = new ArrayList<Distance>();
-		for (int i = 0; i<a.size();++i){
-			if (a.get(i).j == ind){
-				b.add(a.get(i));
+	//Keep the indices of the smallest and the largest value on each line
+	private static void updateExtremes(Map<Double, int[]> extremes, double line, double[] values, int i){
+		final int[] e = extremes.get(line);
+		if (e == null){
+			extremes.put(line, new int[]{i, i});
+		}else{
+			if (values[i] < values[e[0]]){
+				e[0] = i;
+			}
+			if (values[i] > values[e[1]]){
+				e[1] = i;
 			}
 		}
-		Collections.sort(b);
-		return b;		
 	}
 	
-	public class Distance implements Comparable<Distance>{
-		public Coordinate a;
-		public Coordinate b;
-		public int i;
-		public int j;
-		public double distance;
-		public boolean classified = false;	//Flick this to true once classified
-		public Distance(Coordinate a, Coordinate b, int i, int j){
-			this.a = new Coordinate(a);
-			this.b = new Coordinate(b);
-			this.i = i;
-			this.j = j;
-			Coordinate subst = a.subtract(b);
-			distance = Math.sqrt(subst.ii*subst.ii+subst.jj*subst.jj);
+	//The unclassified coordinate nearest to source when it was looked up
+	private static class Candidate{
+		final int source;
+		final int nearest;
+		final double distance;
+		//The number of classifications made at the time of the look up
+		final int lookedUpAt;
+		Candidate(PointGrid grid, int source, int classified){
+			this.source = source;
+			nearest = grid.nearest(source);
+			distance = nearest >= 0 ? grid.distance(source, nearest) : Double.POSITIVE_INFINITY;
+			lookedUpAt = classified;
 		}
-
-		//Implement comparable to enable sorting distances
-		@Override
-		public int compareTo(Distance a) {
-			if (this.distance == a.distance) {
-				return 0;	//Return 0 for ties
-			} 
-			return this.distance < a.distance ? -1 : 1; //Return -1 if this is smaller than a
+		
+		//Whether i was unclassified, i.e. among the candidates, at the time of the look up
+		boolean wasOpen(int i, int[] classifiedAt){
+			return classifiedAt[i] >= lookedUpAt;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,212 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.utils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Square window median filter. The image values are replaced by their rank
+ * among the distinct values of the image, and each row is filtered with a
+ * sliding rank histogram (Huang et al. 1979) so that moving the window costs
+ * 2 * filterSize histogram updates instead of a sort of the whole window. Row
+ * bands are filtered in parallel. Gives exactly the same result as sorting the
+ * window at every pixel; pixels closer than filterSize / 2 to the image border
+ * are set to the given fill value.
+ */
+public class MedianFilter {
+
+	private static final int BAND_HEIGHT = 32;
+
+	public static double[] filter(final double[] data, final int width,
+		final int height, final int filterSize, final double fillValue)
+	{
+		final double[] filtered = new double[width * height];
+		Arrays.fill(filtered, fillValue);
+		final int noGo = filterSize / 2;
+		if (width <= 2 * noGo || height <= 2 * noGo) {
+			return filtered;
+		}
+		// Rank the values, the median of the ranks is the rank of the median
+		final LevelTable table = new LevelTable();
+		for (final double value : data) {
+			table.add(value);
+		}
+		final double[] levels = table.sortedLevels();
+		final int[] ranks = new int[data.length];
+		for (int i = 0; i < data.length; ++i) {
+			ranks[i] = table.rank(data[i]);
+		}
+		final int first = noGo;
+		final int last = height - noGo;
+		final int bands = (last - first + BAND_HEIGHT - 1) / BAND_HEIGHT;
+		final int histogramSize = levels.length;
+		IntStream.range(0, bands).parallel().forEach(b -> filterRows(ranks,
+			levels, filtered, width, filterSize, new int[histogramSize], first + b *
+				BAND_HEIGHT, Math.min(last, first + (b + 1) * BAND_HEIGHT)));
+		return filtered;
+	}
+
+	private static void filterRows(final int[] ranks, final double[] levels,
+		final double[] filtered, final int width, final int filterSize,
+		final int[] histogram, final int firstRow, final int lastRow)
+	{
+		final int noGo = filterSize / 2;
+		// Index of the median in the sorted window
+		final int median = filterSize * filterSize / 2;
+		int rowStartMedian = ranks[firstRow * width + noGo];
+		for (int row = firstRow; row < lastRow; ++row) {
+			final int top = (row - noGo) * width;
+			final int bottom = (row + noGo) * width;
+			// Window at the start of the row
+			for (int r = top; r <= bottom; r += width) {
+				for (int c = 0; c < filterSize; ++c) {
+					++histogram[ranks[r + c]];
+				}
+			}
+			// Start the median search from the median above
+			int med = rowStartMedian;
+			int lessThanMed = 0;
+			for (int r = top; r <= bottom; r += width) {
+				for (int c = 0; c < filterSize; ++c) {
+					if (ranks[r + c] < med) {
+						++lessThanMed;
+					}
+				}
+			}
+			for (int col = noGo; col < width - noGo; ++col) {
+				if (col > noGo) {
+					// Slide the window one column to the right
+					final int out = col - noGo - 1;
+					final int in = col + noGo;
+					for (int r = top; r <= bottom; r += width) {
+						final int outRank = ranks[r + out];
+						--histogram[outRank];
+						if (outRank < med) {
+							--lessThanMed;
+						}
+						final int inRank = ranks[r + in];
+						++histogram[inRank];
+						if (inRank < med) {
+							++lessThanMed;
+						}
+					}
+				}
+				while (lessThanMed > median) {
+					--med;
+					lessThanMed -= histogram[med];
+				}
+				while (lessThanMed + histogram[med] <= median) {
+					lessThanMed += histogram[med];
+					++med;
+				}
+				filtered[row * width + col] = levels[med];
+				if (col == noGo) {
+					rowStartMedian = med;
+				}
+			}
+			// Empty the histogram for the next row
+			for (int r = top; r <= bottom; r += width) {
+				for (int c = width - filterSize; c < width; ++c) {
+					--histogram[ranks[r + c]];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Open addressing hash table from the distinct values of an image to their
+	 * ranks. Values are told apart as Arrays.sort orders them.
+	 */
+	private static final class LevelTable {
+
+		private long[] keys = new long[1024];
+		private int[] values = new int[1024];
+		private boolean[] used = new boolean[1024];
+		private double[] levels = new double[512];
+		private int size;
+
+		private void add(final double value) {
+			final long key = Double.doubleToLongBits(value);
+			final int slot = slot(keys, used, key);
+			if (used[slot]) {
+				return;
+			}
+			used[slot] = true;
+			keys[slot] = key;
+			if (size == levels.length) {
+				levels = Arrays.copyOf(levels, size * 2);
+			}
+			levels[size++] = value;
+			if (size * 2 > keys.length) {
+				grow();
+			}
+		}
+
+		/** Sorts the distinct values and assigns their ranks */
+		private double[] sortedLevels() {
+			levels = Arrays.copyOf(levels, size);
+			Arrays.sort(levels);
+			for (int i = 0; i < size; ++i) {
+				values[slot(keys, used, Double.doubleToLongBits(levels[i]))] = i;
+			}
+			return levels;
+		}
+
+		private int rank(final double value) {
+			return values[slot(keys, used, Double.doubleToLongBits(value))];
+		}
+
+		private void grow() {
+			final long[] newKeys = new long[keys.length * 2];
+			final boolean[] newUsed = new boolean[keys.length * 2];
+			for (int i = 0; i < keys.length; ++i) {
+				if (used[i]) {
+					final int slot = slot(newKeys, newUsed, keys[i]);
+					newUsed[slot] = true;
+					newKeys[slot] = keys[i];
+				}
+			}
+			keys = newKeys;
+			used = newUsed;
+			values = new int[keys.length];
+		}
+
+		private static int slot(final long[] keys, final boolean[] used,
+			final long key)
+		{
+			final int mask = keys.length - 1;
+			int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+			while (used[slot] && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+	}
+}
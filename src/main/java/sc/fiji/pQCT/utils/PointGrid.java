@@ -0,0 +1,232 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A uniform grid over a set of points held in primitive coordinate arrays.
+ * Answers nearest neighbour queries among the points that have not been
+ * removed yet. The cells are visited best first, in the order of their
+ * distance from the query point, from a min-heap frontier.
+ */
+public class PointGrid {
+
+	private static final double CELL_SIZE = 4.0;
+
+	private final double[] x;
+	private final double[] y;
+	private final double minX;
+	private final double minY;
+	private final int columns;
+	private final int rows;
+	// Points of cell c are cellPoints[cellStart[c] .. cellStart[c + 1] - 1] in
+	// ascending index order
+	private final int[] cellStart;
+	private final int[] cellPoints;
+	private final int[] liveInCell;
+	private final BitSet removed;
+	private int live;
+	// Frontier of the nearest neighbour search, cells visited in the current
+	// search are stamped with its number
+	private final int[] visited;
+	private int search;
+	private double[] heapKeys = new double[64];
+	private int[] heapCells = new int[64];
+	private int heapSize;
+
+	public PointGrid(final double[] x, final double[] y) {
+		this.x = x;
+		this.y = y;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < x.length; ++i) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		this.minX = x.length > 0 ? minX : 0;
+		this.minY = y.length > 0 ? minY : 0;
+		columns = x.length > 0 ? (int) ((maxX - minX) / CELL_SIZE) + 1 : 1;
+		rows = y.length > 0 ? (int) ((maxY - minY) / CELL_SIZE) + 1 : 1;
+		cellStart = new int[columns * rows + 1];
+		liveInCell = new int[columns * rows];
+		for (int i = 0; i < x.length; ++i) {
+			++liveInCell[cell(i)];
+		}
+		for (int c = 0; c < liveInCell.length; ++c) {
+			cellStart[c + 1] = cellStart[c] + liveInCell[c];
+		}
+		cellPoints = new int[x.length];
+		final int[] fill = new int[liveInCell.length];
+		for (int i = 0; i < x.length; ++i) {
+			final int c = cell(i);
+			cellPoints[cellStart[c] + fill[c]++] = i;
+		}
+		removed = new BitSet(x.length);
+		live = x.length;
+		visited = new int[liveInCell.length];
+	}
+
+	public int size() {
+		return x.length;
+	}
+
+	public double distance(final int a, final int b) {
+		final double dx = x[a] - x[b];
+		final double dy = y[a] - y[b];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	public boolean isRemoved(final int i) {
+		return removed.get(i);
+	}
+
+	/** Removes the point from the nearest neighbour queries */
+	public void remove(final int i) {
+		if (!removed.get(i)) {
+			removed.set(i);
+			--liveInCell[cell(i)];
+			--live;
+		}
+	}
+
+	/**
+	 * @return the remaining point nearest to point i, the one with the smallest
+	 *         index among equally near points, or -1 if none remain
+	 */
+	public int nearest(final int i) {
+		if (live == 0) {
+			return -1;
+		}
+		if (++search == 0) {
+			Arrays.fill(visited, 0);
+			search = 1;
+		}
+		heapSize = 0;
+		final int start = cell(i);
+		visited[start] = search;
+		push(0, start);
+		int best = -1;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		while (heapSize > 0 && heapKeys[0] <= bestDistance) {
+			final int c = pop();
+			if (liveInCell[c] > 0) {
+				for (int p = cellStart[c]; p < cellStart[c + 1]; ++p) {
+					final int j = cellPoints[p];
+					if (j == i || removed.get(j)) {
+						continue;
+					}
+					final double d = distance(i, j);
+					if (d < bestDistance || (d == bestDistance && j < best)) {
+						best = j;
+						bestDistance = d;
+					}
+				}
+			}
+			final int u = c % columns;
+			final int v = c / columns;
+			if (u > 0) visit(i, c - 1);
+			if (u < columns - 1) visit(i, c + 1);
+			if (v > 0) visit(i, c - columns);
+			if (v < rows - 1) visit(i, c + columns);
+		}
+		return best;
+	}
+
+	// Adds the cell to the frontier keyed by a lower bound of the distance from
+	// point i to the points in it
+	private void visit(final int i, final int c) {
+		if (visited[c] == search) {
+			return;
+		}
+		visited[c] = search;
+		final double left = minX + (c % columns) * CELL_SIZE;
+		final double top = minY + (c / columns) * CELL_SIZE;
+		final double dx = Math.max(0, Math.max(left - x[i], x[i] - left -
+			CELL_SIZE));
+		final double dy = Math.max(0, Math.max(top - y[i], y[i] - top -
+			CELL_SIZE));
+		// Shave off rounding so that equally distant points are not missed
+		push(Math.sqrt(dx * dx + dy * dy) * (1 - 1e-12), c);
+	}
+
+	private void push(final double key, final int c) {
+		if (heapSize == heapKeys.length) {
+			heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+			heapCells = Arrays.copyOf(heapCells, 2 * heapSize);
+		}
+		int k = heapSize++;
+		while (k > 0) {
+			final int parent = (k - 1) >>> 1;
+			if (heapKeys[parent] <= key) {
+				break;
+			}
+			heapKeys[k] = heapKeys[parent];
+			heapCells[k] = heapCells[parent];
+			k = parent;
+		}
+		heapKeys[k] = key;
+		heapCells[k] = c;
+	}
+
+	private int pop() {
+		final int top = heapCells[0];
+		final double key = heapKeys[--heapSize];
+		final int c = heapCells[heapSize];
+		int k = 0;
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				++child;
+			}
+			if (key <= heapKeys[child]) {
+				break;
+			}
+			heapKeys[k] = heapKeys[child];
+			heapCells[k] = heapCells[child];
+			k = child;
+		}
+		heapKeys[k] = key;
+		heapCells[k] = c;
+		return top;
+	}
+
+	private int cell(final int i) {
+		return (int) ((y[i] - minY) / CELL_SIZE) * columns + (int) ((x[i] -
+			minX) / CELL_SIZE);
+	}
+}
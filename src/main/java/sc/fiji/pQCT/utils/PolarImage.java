@@ -0,0 +1,109 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.utils;
+
+import java.util.Arrays;
+
+/**
+ * An image resampled along rays from a centre point into an angle by radius
+ * grid. Each ray is sampled from the centre out for as long as the mask
+ * continues ahead of it (see
+ * {@link PolarRayCaster#sampleWhileAhead(byte[], double[], int)}), so the
+ * samples of a ray run through the bone, and sector or division analyses
+ * reduce to sums over the rows and columns of the grid.
+ */
+public class PolarImage {
+
+	public final int angles;
+	public final double step;
+	public final double centreX;
+	public final double centreY;
+	/** Angle of each ray in radians */
+	public final double[] theta;
+	/** Number of samples on each ray */
+	public final int[] lengths;
+	/** Radius where each ray left the mask */
+	public final double[] endRadii;
+	/** Radius of sample k, the same on every ray */
+	public final double[] radii;
+	/** Samples of ray et start from et * columns */
+	public final double[] values;
+	public final int columns;
+
+	/**
+	 * @param centre x and y of the centre of the rays
+	 * @param angles number of rays over the full circle
+	 * @param step radial distance between samples in pixels
+	 */
+	public PolarImage(final byte[] mask, final double[] image, final int width,
+		final double[] centre, final int angles, final double step)
+	{
+		this.angles = angles;
+		this.step = step;
+		centreX = centre[0];
+		centreY = centre[1];
+		theta = new double[angles];
+		lengths = new int[angles];
+		endRadii = new double[angles];
+		final PolarRayCaster caster = new PolarRayCaster(width, centreX, centreY,
+			angles, step);
+		double[] grid = new double[0];
+		double[] sampleRadii = new double[0];
+		int rowLength = 0;
+		for (int et = 0; et < angles; ++et) {
+			theta[et] = caster.getTheta(et);
+			lengths[et] = caster.sampleWhileAhead(mask, image, et);
+			endRadii[et] = caster.getEndRadius();
+			if (lengths[et] > rowLength) {
+				// Widen the rows sampled so far
+				final int newLength = Math.max(lengths[et], 2 * rowLength);
+				final double[] wider = new double[angles * newLength];
+				for (int i = 0; i < et; ++i) {
+					System.arraycopy(grid, i * rowLength, wider, i * newLength,
+						lengths[i]);
+				}
+				grid = wider;
+				rowLength = newLength;
+			}
+			if (lengths[et] > sampleRadii.length) {
+				sampleRadii = Arrays.copyOf(caster.getRadii(), lengths[et]);
+			}
+			System.arraycopy(caster.getSamples(), 0, grid, et * rowLength,
+				lengths[et]);
+		}
+		columns = rowLength;
+		values = grid;
+		radii = sampleRadii;
+	}
+
+	/** @return sample k of ray et */
+	public double get(final int et, final int k) {
+		return values[et * columns + k];
+	}
+}
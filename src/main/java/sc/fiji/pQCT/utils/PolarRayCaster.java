@@ -0,0 +1,258 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.utils;
+
+import java.util.Arrays;
+
+/**
+ * Marches rays from a centre point, by default over the 360 one degree angles
+ * used by the distribution analyses. The sines and cosines are tabulated once,
+ * and the samples taken along a ray are written into primitive buffers that
+ * are reused from ray to ray.
+ * <p>
+ * The rays are sampled at 0.1 pixel steps by default, accumulating the radius
+ * the same way as the analyses always have, so the results do not change.
+ * </p>
+ */
+public class PolarRayCaster {
+
+	public static final int ANGLES = 360;
+	public static final double STEP = 0.1;
+	// Radii ahead of the current one that are probed to skip small gaps
+	private static final double[] PROBE_OFFSETS = { 0.0, 0.5, 1.0, 2.0, 3.0,
+		4.0, 6.0 };
+
+	private final int width;
+	private final double centreX;
+	private final double centreY;
+	private final int angles;
+	private final double step;
+	private final double[] cos;
+	private final double[] sin;
+	private double[] samples = new double[256];
+	private double[] radii = new double[256];
+	private int sampleCount;
+	private double endRadius;
+
+	public PolarRayCaster(final int width, final double centreX,
+		final double centreY)
+	{
+		this(width, centreX, centreY, ANGLES, STEP);
+	}
+
+	/**
+	 * @param angles number of rays, evenly spaced over the full circle
+	 * @param step radial distance between the samples of a ray in pixels
+	 */
+	public PolarRayCaster(final int width, final double centreX,
+		final double centreY, final int angles, final double step)
+	{
+		this.width = width;
+		this.centreX = centreX;
+		this.centreY = centreY;
+		this.angles = angles;
+		this.step = step;
+		cos = new double[angles];
+		sin = new double[angles];
+		for (int et = 0; et < angles; ++et) {
+			cos[et] = Math.cos(getTheta(et));
+			sin[et] = Math.sin(getTheta(et));
+		}
+	}
+
+	/** @return the angle of ray et in radians */
+	public double getTheta(final int et) {
+		return Math.PI / (angles / 2.0) * et;
+	}
+
+	public int getAngles() {
+		return angles;
+	}
+
+	public double getStep() {
+		return step;
+	}
+
+	/** @return index of the pixel at radius r on ray et */
+	public int index(final int et, final double r) {
+		return (int) (centreX + r * cos[et]) + ((int) (centreY + r * sin[et])) *
+			width;
+	}
+
+	/**
+	 * @return true if any of the pixels at r, r + 0.5, r + 1, r + 2, r + 3, r + 4
+	 *         or r + 6 on ray et is above the threshold. The pixel index is
+	 *         truncated after adding the row offset, as the distribution analysis
+	 *         has always done, which picks the next pixel when x is just below
+	 *         an integer.
+	 */
+	public boolean anyAhead(final double[] roi, final double threshold,
+		final int et, final double r)
+	{
+		for (final double offset : PROBE_OFFSETS) {
+			final double probeR = r + offset;
+			if (roi[(int) ((centreX + probeR * cos[et]) + ((int) (centreY + probeR *
+				sin[et])) * width)] > threshold)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @see #anyAhead(double[], double, int, double) */
+	public boolean anyAhead(final byte[] mask, final int et, final double r) {
+		for (final double offset : PROBE_OFFSETS) {
+			if (mask[index(et, r + offset)] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Steps out from r until a pixel at least the threshold, or maxR, is
+	 * reached.
+	 *
+	 * @return the radius where the stepping stopped
+	 */
+	public double expand(final double[] roi, final double threshold,
+		final int et, final double r, final double maxR)
+	{
+		double expandedR = r;
+		while (!(roi[index(et, expandedR)] >= threshold) && expandedR < maxR) {
+			expandedR += step;
+		}
+		return expandedR;
+	}
+
+	/**
+	 * Steps out from r as long as {@link #anyAhead(double[], double, int,
+	 * double)} finds a pixel above the threshold, and maxR has not been reached.
+	 *
+	 * @return the radius where the stepping stopped
+	 */
+	public double expandWhileAhead(final double[] roi, final double threshold,
+		final int et, final double r, final double maxR)
+	{
+		double expandedR = r;
+		while (anyAhead(roi, threshold, et, expandedR) && expandedR < maxR) {
+			expandedR += step;
+		}
+		return expandedR;
+	}
+
+	/**
+	 * Steps in from r towards minR until a positive pixel is found.
+	 *
+	 * @return the radius one step out from the first positive pixel, or the
+	 *         radius where the stepping passed minR
+	 */
+	public double contract(final double[] roi, final int et, final double r,
+		final double minR)
+	{
+		double contractedR = r;
+		while (contractedR > minR) {
+			if (roi[index(et, contractedR)] > 0) {
+				return contractedR + step;
+			}
+			contractedR -= step;
+		}
+		return contractedR;
+	}
+
+	/**
+	 * Samples the image from the centre out, as long as
+	 * {@link #anyAhead(byte[], int, double)} finds mask pixels ahead. The
+	 * samples and their radii are available from {@link #getSamples()} and
+	 * {@link #getRadii()}, and the radius where the ray left the mask from
+	 * {@link #getEndRadius()}.
+	 *
+	 * @return the number of samples
+	 */
+	public int sampleWhileAhead(final byte[] mask, final double[] image,
+		final int et)
+	{
+		sampleCount = 0;
+		double r = 0;
+		while (anyAhead(mask, et, r)) {
+			add(image[index(et, r)], r);
+			r += step;
+		}
+		endRadius = r;
+		return sampleCount;
+	}
+
+	/**
+	 * Samples the image at the pixels of the mask that are positive, stepping
+	 * out from just beyond r while the radius is below rEnd. The radius reached
+	 * is available from {@link #getEndRadius()}.
+	 *
+	 * @return the number of samples
+	 */
+	public int sampleMasked(final double[] mask, final double[] image,
+		final int et, final double r, final double rEnd)
+	{
+		sampleCount = 0;
+		double sampleR = r;
+		while (sampleR < rEnd) {
+			sampleR += step;
+			final int index = index(et, sampleR);
+			if (mask[index] > 0) {
+				add(image[index], sampleR);
+			}
+		}
+		endRadius = sampleR;
+		return sampleCount;
+	}
+
+	/** @return the buffer of the last samples, valid up to the sample count */
+	public double[] getSamples() {
+		return samples;
+	}
+
+	/** @return the radii of the last samples */
+	public double[] getRadii() {
+		return radii;
+	}
+
+	public double getEndRadius() {
+		return endRadius;
+	}
+
+	private void add(final double sample, final double r) {
+		if (sampleCount == samples.length) {
+			samples = Arrays.copyOf(samples, 2 * sampleCount);
+			radii = Arrays.copyOf(radii, 2 * sampleCount);
+		}
+		samples[sampleCount] = sample;
+		radii[sampleCount] = r;
+		++sampleCount;
+	}
+}
@@ -106,6 +106,10 @@ public class ResultsWriter {
 	public void writeHeader(final TextPanel textPanel,
 		final ImageAndAnalysisDetails details)
 	{
+		textPanel.setColumnHeadings(getHeader(details));
+	}
+
+	public String getHeader(final ImageAndAnalysisDetails details) {
 		final StringBuilder headings = new StringBuilder(String.join("\t",
 			"File Name", "Patient's Name", "Patient ID", "Patient's Birth Date",
 			"Acquisition Date", "Pixel Spacing", "Object Length","Gradient tracing", "Peeling percentage", "Air Threshold",
@@ -190,6 +194,6 @@ public class ResultsWriter {
 				}
 			}
 		}
-		textPanel.setColumnHeadings(headings.toString());
+		return headings.toString();
 	}
 }
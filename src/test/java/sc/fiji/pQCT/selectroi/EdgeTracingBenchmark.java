@@ -0,0 +1,220 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.selectroi;
+
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+
+import sc.fiji.pQCT.io.ImageAndAnalysisDetails;
+import sc.fiji.pQCT.io.ScaledImageData;
+
+/**
+ * Compares {@link RoiSelector}'s edge tracing into a {@link Contour} against
+ * the earlier tracing into boxed {@link Vector}s, and reports the timings of
+ * tracing and reading back the coordinates of a two bone phantom for images up
+ * to 1024 x 1024 pixels. Run its main method from the test classpath.
+ */
+public class EdgeTracingBenchmark {
+
+	private static final String[] CHOICE_LABELS = { "Bigger", "Smaller" };
+	private static final String[] ROTATION_LABELS = { "According_to_Imax/Imin" };
+
+	public static void main(final String[] args) throws ExecutionException {
+		final Random random = new Random(1);
+		final double threshold = 550.0;
+		for (final int size : new int[] { 256, 512, 1024 }) {
+			// Two bones in soft tissue with noise, like a lower leg cross-section
+			final int[] data = new int[size * size];
+			for (int j = 0; j < size; ++j) {
+				for (int i = 0; i < size; ++i) {
+					final double tibia = Math.hypot(i - size * 0.4, j - size / 2.0);
+					final double fibula = Math.hypot(i - size * 0.7, j - size * 0.55);
+					final double leg = Math.hypot(i - size / 2.0, j - size / 2.0);
+					data[i + j * size] = (int) Math.round((tibia < size / 8.0 ||
+						fibula < size / 20.0 ? 1200.0 : leg < size * 0.4 ? 60.0 : -1000.0) +
+						random.nextGaussian() * 40.0);
+				}
+			}
+			final double[] thresholds = { 20, -40, 40, 40, 45, 80, 200, 200,
+				threshold, 690, 1, 0 };
+			final ImageAndAnalysisDetails details = new ImageAndAnalysisDetails(
+				new boolean[7], thresholds, new String[] { CHOICE_LABELS[0],
+					CHOICE_LABELS[0], ROTATION_LABELS[0] }, CHOICE_LABELS,
+				ROTATION_LABELS, new boolean[10], 0.0, new boolean[8], new int[] { 10,
+					3, 10, 10 });
+			final ScaledImageData scaledImageData = new ScaledImageData(data, size,
+				size, 0.5, details.scalingFactor, details.constant,
+				details.flipHorizontal, details.flipVertical, details.noFiltering);
+			final SelectROI selector = new SelectROI(scaledImageData, details, null,
+				threshold);
+			final double[] image = scaledImageData.scaledImage;
+
+			// Trace from the first pixel above the threshold on every fourth row
+			final Vector<int[]> starts = new Vector<>();
+			for (int j = 0; j < size; j += 4) {
+				for (int i = 1; i < size; ++i) {
+					if (image[i + j * size] >= threshold && image[i - 1 + j *
+						size] < threshold)
+					{
+						starts.add(new int[] { i, j });
+						break;
+					}
+				}
+			}
+
+			boolean equal = true;
+			long contourBest = Long.MAX_VALUE;
+			long boxedBest = Long.MAX_VALUE;
+			for (int repeat = 0; repeat < 5; ++repeat) {
+				long contourSum = 0;
+				long boxedSum = 0;
+				long start = System.nanoTime();
+				for (final int[] point : starts) {
+					final Contour contour = selector.traceEdge(image, new byte[size *
+						size], threshold, point[0], point[1]);
+					for (int k = 0; k < contour.size(); ++k) {
+						contourSum += contour.getI(k) + contour.getJ(k);
+					}
+				}
+				contourBest = Math.min(contourBest, System.nanoTime() - start);
+				start = System.nanoTime();
+				for (final int[] point : starts) {
+					final Vector<Vector<Integer>> boxed = boxedTraceEdge(image, size,
+						size, new byte[size * size], threshold, point[0], point[1]);
+					for (int k = 0; k < boxed.get(0).size(); ++k) {
+						boxedSum += boxed.get(0).get(k) + boxed.get(1).get(k);
+					}
+				}
+				boxedBest = Math.min(boxedBest, System.nanoTime() - start);
+				equal &= contourSum == boxedSum;
+			}
+			for (final int[] point : starts) {
+				final Contour contour = selector.traceEdge(image, new byte[size *
+					size], threshold, point[0], point[1]);
+				final Vector<Vector<Integer>> boxed = boxedTraceEdge(image, size, size,
+					new byte[size * size], threshold, point[0], point[1]);
+				equal &= contour.size() == boxed.get(0).size();
+				for (int k = 0; equal && k < contour.size(); ++k) {
+					equal = contour.getI(k) == boxed.get(0).get(k) && contour.getJ(
+						k) == boxed.get(1).get(k);
+				}
+			}
+			System.out.println(String.format(
+				"%4d x %4d, %d traces: contour %7.1f ms, boxed %7.1f ms, equal %b",
+				size, size, starts.size(), contourBest / 1e6, boxedBest / 1e6, equal));
+		}
+	}
+
+	/**
+	 * The tracing of {@link RoiSelector#traceEdge} as it was before
+	 * {@link Contour}, collecting the coordinates into boxed vectors.
+	 */
+	private static Vector<Vector<Integer>> boxedTraceEdge(
+		final double[] scaledImage, final int width, final int height,
+		final byte[] result, final double threshold, int i, int j)
+	{
+		final Vector<Integer> iit = new Vector<>();
+		final Vector<Integer> jiit = new Vector<>();
+		iit.add(i);
+		jiit.add(j);
+		double direction = 0;
+		double previousDirection;
+		final int initI = i;
+		final int initJ = j;
+		while (true) {
+			int counter = 0;
+			previousDirection = direction;
+			if ((i + ((int) Math.round(Math.cos(direction)))) >= 0 && (i + ((int) Math
+				.round(Math.cos(direction))) < width) && (j + ((int) Math.round(Math
+					.sin(direction))) >= 0) && (j + ((int) Math.round(Math.sin(
+						direction))) < height) && scaledImage[i + ((int) Math.round(Math
+							.cos(direction))) + (j + ((int) Math.round(Math.sin(
+								direction)))) * width] > threshold)
+			{
+				while (counter < 8 && i + ((int) Math.round(Math.cos(direction -
+					Math.PI / 4.0))) >= 0 && i + ((int) Math.round(Math.cos(direction -
+						Math.PI / 4.0))) < width && j + ((int) Math.round(Math.sin(
+							direction - Math.PI / 4.0))) >= 0 && j + ((int) Math.round(Math
+								.sin(direction - Math.PI / 4.0))) < height && scaledImage[i +
+									((int) Math.round(Math.cos(direction - Math.PI / 4.0))) + (j +
+										((int) Math.round(Math.sin(direction - Math.PI / 4.0)))) *
+										width] > threshold)
+				{
+					direction -= Math.PI / 4.0;
+					++counter;
+					if (Math.abs(direction - previousDirection) >= 180) {
+						break;
+					}
+				}
+			}
+			else {
+				while (counter < 8 && (i + ((int) Math.round(Math.cos(
+					direction))) < 0 || i + ((int) Math.round(Math.cos(
+						direction))) >= width || j + ((int) Math.round(Math.sin(
+							direction))) < 0 || j + ((int) Math.round(Math.sin(
+								direction))) >= height || scaledImage[i + ((int) Math.round(Math
+									.cos(direction))) + (j + ((int) Math.round(Math.sin(
+										direction)))) * width] < threshold))
+				{
+					direction += Math.PI / 4.0;
+					++counter;
+					if (Math.abs(direction - previousDirection) >= 180) {
+						break;
+					}
+				}
+			}
+			i += (int) Math.round(Math.cos(direction));
+			j += (int) Math.round(Math.sin(direction));
+			if ((i == initI && j == initJ) || counter > 7 || scaledImage[i + j *
+				width] < threshold || result[i + j * width] == 1 || result[i + j *
+					width] > 3)
+			{
+				for (int ii = 0; ii < result.length; ++ii) {
+					if (result[ii] > 1) {
+						result[ii] = 1;
+					}
+				}
+				final Vector<Vector<Integer>> returnVector = new Vector<>();
+				returnVector.add(iit);
+				returnVector.add(jiit);
+				return returnVector;
+			}
+			if (result[i + j * width] == 0) {
+				result[i + j * width] = 2;
+			}
+			else if (result[i + j * width] != 1) {
+				result[i + j * width]++;
+			}
+			iit.add(i);
+			jiit.add(j);
+			direction -= Math.PI / 2.0;
+		}
+	}
+}
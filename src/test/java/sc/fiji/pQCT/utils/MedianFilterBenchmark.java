@@ -0,0 +1,97 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2018, Timo Rantalainen
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package sc.fiji.pQCT.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares {@link MedianFilter} against sorting the window at every pixel, and
+ * reports the timings for kernel sizes 3, 5 and 7 and images up to 1024 x 1024
+ * pixels. Run its main method from the test classpath.
+ */
+public class MedianFilterBenchmark {
+
+	public static void main(final String[] args) {
+		final Random random = new Random(1);
+		for (final int size : new int[] { 256, 512, 1024 }) {
+			// Smooth blobs plus noise, quantised like scaled scanner values
+			final double[] image = new double[size * size];
+			for (int j = 0; j < size; ++j) {
+				for (int i = 0; i < size; ++i) {
+					final double r = Math.hypot(i - size / 2.0, j - size / 2.0);
+					image[i + j * size] = Math.round((r < size / 4.0 ? 1200.0 : r <
+						size / 3.0 ? 60.0 : -1000.0) + random.nextGaussian() * 40.0) *
+						0.5 - 300.0;
+				}
+			}
+			for (final int filterSize : new int[] { 3, 5, 7 }) {
+				final double[] reference = sortFilter(image, size, size, filterSize,
+					-1000.0);
+				double[] result = null;
+				long best = Long.MAX_VALUE;
+				for (int repeat = 0; repeat < 10; ++repeat) {
+					final long start = System.nanoTime();
+					result = MedianFilter.filter(image, size, size, filterSize, -1000.0);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				final long start = System.nanoTime();
+				sortFilter(image, size, size, filterSize, -1000.0);
+				final long sortTime = System.nanoTime() - start;
+				System.out.println(String.format(
+					"%4d x %4d, %d x %d: histogram %7.1f ms, sort %7.1f ms, equal %b",
+					size, size, filterSize, filterSize, best / 1e6, sortTime / 1e6,
+					Arrays.equals(reference, result)));
+			}
+		}
+	}
+
+	private static double[] sortFilter(final double[] data, final int width,
+		final int height, final int filterSize, final double fillValue)
+	{
+		final double[] filtered = new double[width * height];
+		Arrays.fill(filtered, fillValue);
+		final double[] toMedian = new double[filterSize * filterSize];
+		final int noGo = filterSize / 2;
+		for (int row = noGo; row < height - noGo; row++) {
+			for (int col = noGo; col < width - noGo; col++) {
+				int newPixel = 0;
+				for (int rowOffset = -noGo; rowOffset <= noGo; rowOffset++) {
+					for (int colOffset = -noGo; colOffset <= noGo; colOffset++) {
+						toMedian[newPixel++] = data[(row + rowOffset) * width + col +
+							colOffset];
+					}
+				}
+				Arrays.sort(toMedian);
+				filtered[row * width + col] = toMedian[filterSize * filterSize / 2];
+			}
+		}
+		return filtered;
+	}
+}